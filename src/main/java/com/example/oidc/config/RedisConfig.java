@@ -1,17 +1,50 @@
 package com.example.oidc.config;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+
+/**
+ * Redis connections for the redis storage backend.
+ * <p>
+ * The topology follows the configuration: cluster when
+ * spring.redis.cluster.nodes is set, Sentinel when spring.redis.sentinel.master
+ * is set, otherwise a single server. Everything goes to the primary except
+ * reads through {@code replicaBinaryRedisTemplate}, which exists when
+ * spring.redis.read-from selects replicas and is only used for reads that can
+ * tolerate replication lag.
+ */
 @Configuration
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "redis", matchIfMissing = true)
 public class RedisConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
@@ -25,31 +58,56 @@ public class RedisConfig {
     @Value("${spring.redis.password:#{null}}")
     private String redisPassword;
 
+    @Value("${spring.redis.sentinel.master:}")
+    private String sentinelMaster;
+
+    // host:port,host:port
+    @Value("${spring.redis.sentinel.nodes:}")
+    private String sentinelNodes;
+
+    @Value("${spring.redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${spring.redis.cluster.max-redirects:3}")
+    private int clusterMaxRedirects;
+
+    @Value("${spring.redis.read-from:upstream}")
+    private String readFrom;
+
+    @Value("${spring.redis.timeout-millis:2000}")
+    private long commandTimeoutMillis;
+
+    @Value("${spring.redis.connect-timeout-millis:1000}")
+    private long connectTimeoutMillis;
+
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
+    @Primary
+    public LettuceConnectionFactory redisConnectionFactory() {
         logger.info("=== Configuring Redis Connection ===");
-        logger.info("Redis Host: {}", redisHost);
-        logger.info("Redis Port: {}", redisPort);
+        logger.info("Redis Topology: {}", describeTopology());
         logger.info("Redis Password: {}", redisPassword != null ? "***SET***" : "NOT SET");
         logger.info("Environment REDIS_HOST: {}", System.getenv("REDIS_HOST"));
         logger.info("Environment SPRING_REDIS_HOST: {}", System.getenv("SPRING_REDIS_HOST"));
+        logger.info("Command timeout: {} ms, connect timeout: {} ms", commandTimeoutMillis, connectTimeoutMillis);
         logger.info("====================================");
 
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
-        config.setHostName(redisHost);
-        config.setPort(redisPort);
-
-        if (redisPassword != null && !redisPassword.isEmpty()) {
-            config.setPassword(redisPassword);
-        }
-
-        LettuceConnectionFactory factory = new LettuceConnectionFactory(config);
-
-        logger.info("Redis connection factory created for {}:{}", redisHost, redisPort);
-
+        LettuceConnectionFactory factory = createConnectionFactory(null);
+        logger.info("Redis connection factory created for {}", describeTopology());
         return factory;
     }
 
+    /**
+     * Second connection factory whose reads go to replicas as configured by
+     * spring.redis.read-from (for example replicaPreferred). With a single
+     * server, replicas are discovered from the primary's replication info.
+     */
+    @Bean
+    @ConditionalOnExpression("!'${spring.redis.read-from:upstream}'.equalsIgnoreCase('upstream')")
+    public LettuceConnectionFactory replicaRedisConnectionFactory() {
+        logger.info("Replica reads enabled (read-from {})", readFrom);
+        return createConnectionFactory(ReadFrom.valueOf(readFrom));
+    }
+
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -58,6 +116,20 @@ public class RedisConfig {
         return template;
     }
 
+    @Bean
+    public RedisTemplate<String, byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        logger.info("Binary RedisTemplate bean created");
+        return binaryTemplate(connectionFactory);
+    }
+
+    @Bean
+    @ConditionalOnExpression("!'${spring.redis.read-from:upstream}'.equalsIgnoreCase('upstream')")
+    public RedisTemplate<String, byte[]> replicaBinaryRedisTemplate(
+            @Qualifier("replicaRedisConnectionFactory") RedisConnectionFactory connectionFactory) {
+        logger.info("Replica binary RedisTemplate bean created");
+        return binaryTemplate(connectionFactory);
+    }
+
     @Bean
     public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory connectionFactory) {
         StringRedisTemplate template = new StringRedisTemplate();
@@ -65,4 +137,110 @@ public class RedisConfig {
         logger.info("StringRedisTemplate bean created");
         return template;
     }
+
+    private static RedisTemplate<String, byte[]> binaryTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    // readFrom null: plain connections to the primary
+    private LettuceConnectionFactory createConnectionFactory(ReadFrom readFrom) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfig = clientConfiguration(
+                !clusterNodes.isBlank(), commandTimeoutMillis, connectTimeoutMillis);
+        if (readFrom != null) {
+            clientConfig.readFrom(readFrom);
+        }
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(redisConfiguration(), clientConfig.build());
+        // All threads multiplex one connection; blocking commands and
+        // transactions still get a dedicated one
+        factory.setShareNativeConnection(true);
+        // Pipelined batches (IRedisClient.executeBatch) go out in one write instead of one per command
+        factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+        return factory;
+    }
+
+    private RedisConfiguration redisConfiguration() {
+        if (!clusterNodes.isBlank()) {
+            RedisClusterConfiguration config = new RedisClusterConfiguration(nodes(clusterNodes));
+            config.setMaxRedirects(clusterMaxRedirects);
+            setPassword(config);
+            return config;
+        }
+        if (!sentinelMaster.isBlank()) {
+            RedisSentinelConfiguration config = new RedisSentinelConfiguration(sentinelMaster,
+                    new HashSet<>(nodes(sentinelNodes)));
+            setPassword(config);
+            return config;
+        }
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
+        config.setHostName(redisHost);
+        config.setPort(redisPort);
+        setPassword(config);
+        return config;
+    }
+
+    private void setPassword(RedisConfiguration.WithPassword config) {
+        if (redisPassword != null && !redisPassword.isEmpty()) {
+            config.setPassword(redisPassword);
+        }
+    }
+
+    /**
+     * Lettuce settings shared by every Redis connection factory of the
+     * application.
+     */
+    static LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfiguration(boolean cluster,
+            long commandTimeoutMillis, long connectTimeoutMillis) {
+        return LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofMillis(commandTimeoutMillis))
+                .clientOptions(clientOptions(cluster, commandTimeoutMillis, connectTimeoutMillis));
+    }
+
+    private static ClientOptions clientOptions(boolean cluster, long commandTimeoutMillis,
+            long connectTimeoutMillis) {
+        SocketOptions socketOptions = SocketOptions.builder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .keepAlive(true)
+                .build();
+        // Fail commands straight away while disconnected instead of queueing
+        // them until the command timeout; reconnecting happens in the background
+        if (cluster) {
+            return ClusterClientOptions.builder()
+                    .autoReconnect(true)
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .socketOptions(socketOptions)
+                    .timeoutOptions(TimeoutOptions.enabled(Duration.ofMillis(commandTimeoutMillis)))
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enablePeriodicRefresh(Duration.ofSeconds(30))
+                            .enableAllAdaptiveRefreshTriggers()
+                            .build())
+                    .build();
+        }
+        return ClientOptions.builder()
+                .autoReconnect(true)
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .socketOptions(socketOptions)
+                .timeoutOptions(TimeoutOptions.enabled(Duration.ofMillis(commandTimeoutMillis)))
+                .build();
+    }
+
+    private String describeTopology() {
+        if (!clusterNodes.isBlank()) {
+            return "cluster " + clusterNodes;
+        }
+        if (!sentinelMaster.isBlank()) {
+            return "sentinel master " + sentinelMaster + " via " + sentinelNodes;
+        }
+        return redisHost + ":" + redisPort;
+    }
+
+    private static List<String> nodes(String nodes) {
+        return Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .toList();
+    }
 }
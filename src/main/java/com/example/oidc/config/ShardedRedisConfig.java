@@ -0,0 +1,82 @@
+package com.example.oidc.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.oidc.storage.ShardedAsyncRedisClient;
+import com.example.oidc.storage.ShardedRedisClient;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+
+/**
+ * Storage clients for oidc.storage.backend=sharded: keys spread over the
+ * standalone Redis servers listed in oidc.storage.sharded.nodes.
+ */
+@Configuration
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "sharded")
+public class ShardedRedisConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedRedisConfig.class);
+
+    // host:port,host:port
+    @Value("${oidc.storage.sharded.nodes}")
+    private String nodes;
+
+    @Value("${oidc.storage.sharded.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${spring.redis.password:#{null}}")
+    private String redisPassword;
+
+    @Value("${spring.redis.timeout-millis:2000}")
+    private long commandTimeoutMillis;
+
+    @Value("${spring.redis.connect-timeout-millis:1000}")
+    private long connectTimeoutMillis;
+
+    @Bean(destroyMethod = "shutdown")
+    public ShardedRedisClient shardedRedisClient(ObjectCodecRegistry codecs) {
+        List<String> names = Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .toList();
+        if (names.isEmpty()) {
+            throw new IllegalStateException("oidc.storage.sharded.nodes must list at least one host:port");
+        }
+        List<LettuceConnectionFactory> factories = new ArrayList<>(names.size());
+        for (String name : names) {
+            int separator = name.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalStateException("Invalid shard " + name + ", expected host:port");
+            }
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(name.substring(0, separator),
+                    Integer.parseInt(name.substring(separator + 1)));
+            if (redisPassword != null && !redisPassword.isEmpty()) {
+                config.setPassword(redisPassword);
+            }
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(config,
+                    RedisConfig.clientConfiguration(false, commandTimeoutMillis, connectTimeoutMillis).build());
+            factory.setShareNativeConnection(true);
+            factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+            factories.add(factory);
+        }
+        logger.info("Redis shards: {}", names);
+        return new ShardedRedisClient(names, factories, codecs, virtualNodes);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ShardedAsyncRedisClient shardedAsyncRedisClient(ShardedRedisClient shardedRedisClient,
+            ObjectCodecRegistry codecs) {
+        return new ShardedAsyncRedisClient(shardedRedisClient, codecs);
+    }
+}
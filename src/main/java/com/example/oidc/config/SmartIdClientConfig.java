@@ -7,6 +7,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import java.io.InputStream;
 import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class SmartIdClientConfig {
@@ -26,6 +27,9 @@ public class SmartIdClientConfig {
     @Value("${smartid.client.api-trust-store-password:}")
     private String apiTrustStorePassword;
 
+    @Value("${smartid.client.status-timeout-millis:10000}")
+    private long statusTimeoutMillis;
+
     @Bean
     public SmartIdClient smartIdClient() {
         try {
@@ -39,6 +43,8 @@ public class SmartIdClientConfig {
             client.setRelyingPartyName(smartIdClientRelyingPartyName);
             client.setHostUrl(smartIdClientHostUrl);
             client.setTrustStore(trustStoreInstance);
+            // Long poll: status requests wait up to this long for the user
+            client.setSessionStatusResponseSocketOpenTime(TimeUnit.MILLISECONDS, statusTimeoutMillis);
             return client;
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize SmartIdClient with trust store", e);
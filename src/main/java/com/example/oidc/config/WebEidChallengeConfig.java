@@ -8,13 +8,13 @@ import eu.webeid.security.challenge.ChallengeNonceStore;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import com.example.oidc.storage.RedisClient;
+import com.example.oidc.storage.IRedisClient;
 
 @Configuration
 public class WebEidChallengeConfig {
 
     @Bean
-    public ChallengeNonceGenerator challengeNonceGenerator(RedisClient redisClient) {
+    public ChallengeNonceGenerator challengeNonceGenerator(IRedisClient redisClient) {
         return new ChallengeNonceGeneratorBuilder()
                 .withChallengeNonceStore(new EmptyChallengeNonceStore())
                 .build();
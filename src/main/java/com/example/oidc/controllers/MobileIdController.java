@@ -2,23 +2,30 @@ package com.example.oidc.controllers;
 
 import com.example.oidc.dto.MobileIdCheckResponse;
 import com.example.oidc.dto.MobileIdStartResponse;
+import com.example.oidc.service.AuthEventStreams;
 import com.example.oidc.service.IMobileIdService;
+import com.example.oidc.storage.AuthMethod;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @Tag(name = "Mobile-ID Authentication", description = "Endpoints for Mobile-ID authentication flow")
 public class MobileIdController {
 
     private final IMobileIdService mobileIdService;
+    private final AuthEventStreams authEventStreams;
 
     @Autowired
-    public MobileIdController(IMobileIdService mobileIdService) {
+    public MobileIdController(IMobileIdService mobileIdService, AuthEventStreams authEventStreams) {
         this.mobileIdService = mobileIdService;
+        this.authEventStreams = authEventStreams;
     }
 
     @PostMapping("/mobileid/start")
@@ -36,8 +43,23 @@ public class MobileIdController {
     }
 
     @GetMapping("/mobileid/check")
-    @Operation(summary = "Check Mobile-ID authentication status", description = "Polls the status of an ongoing Mobile-ID authentication session")
-    public MobileIdCheckResponse checkMobileId(
+    @Operation(summary = "Check Mobile-ID authentication status", description = "Polls the status of an ongoing Mobile-ID authentication session; with wait, answers once the status changes")
+    public DeferredResult<MobileIdCheckResponse> checkMobileId(
+            @Parameter(description = "Mobile-ID session identifier", required = true) @RequestParam String sessionId,
+            @Parameter(description = "OAuth2 client ID") @RequestParam(required = false) String client_id,
+            @Parameter(description = "OAuth2 redirect URI") @RequestParam(required = false) String redirect_uri,
+            @Parameter(description = "OAuth2 response type") @RequestParam(required = false) String response_type,
+            @Parameter(description = "OAuth2 scope") @RequestParam(required = false) String scope,
+            @Parameter(description = "OAuth2 state parameter") @RequestParam(required = false) String state,
+            @Parameter(description = "OIDC nonce parameter") @RequestParam(required = false) String nonce,
+            @Parameter(description = "Seconds to hold the request open until the status changes (long poll); 0 answers at once") @RequestParam(defaultValue = "0") long wait) {
+        return authEventStreams.awaitChange(AuthMethod.MOBILE_ID, sessionId, wait, () -> mobileIdService.checkMobileId(
+                sessionId, client_id, redirect_uri, response_type, scope, state, nonce));
+    }
+
+    @GetMapping(value = "/mobileid/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream Mobile-ID authentication status", description = "Server-Sent Events: pending, running, then complete (with redirectUrl) or error; an alternative to polling /mobileid/check")
+    public SseEmitter mobileIdEvents(
             @Parameter(description = "Mobile-ID session identifier", required = true) @RequestParam String sessionId,
             @Parameter(description = "OAuth2 client ID") @RequestParam(required = false) String client_id,
             @Parameter(description = "OAuth2 redirect URI") @RequestParam(required = false) String redirect_uri,
@@ -45,6 +67,7 @@ public class MobileIdController {
             @Parameter(description = "OAuth2 scope") @RequestParam(required = false) String scope,
             @Parameter(description = "OAuth2 state parameter") @RequestParam(required = false) String state,
             @Parameter(description = "OIDC nonce parameter") @RequestParam(required = false) String nonce) {
-        return mobileIdService.checkMobileId(sessionId, client_id, redirect_uri, response_type, scope, state, nonce);
+        return authEventStreams.open(AuthMethod.MOBILE_ID, sessionId, () -> mobileIdService.checkMobileId(
+                sessionId, client_id, redirect_uri, response_type, scope, state, nonce));
     }
 }
@@ -1,7 +1,9 @@
 package com.example.oidc.controllers.OIDC;
 
+import com.example.oidc.service.IJwtSigningService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import com.nimbusds.jose.JWSAlgorithm;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,6 +13,12 @@ import java.util.HashMap;
 @RestController
 @Tag(name = "OIDC Discovery", description = "OpenID Connect discovery endpoints")
 public class OidcDiscoveryController {
+    private final IJwtSigningService jwtSigningService;
+
+    public OidcDiscoveryController(IJwtSigningService jwtSigningService) {
+        this.jwtSigningService = jwtSigningService;
+    }
+
     @GetMapping("/.well-known/openid-configuration")
     @Operation(summary = "OpenID Connect discovery", description = "Returns the OpenID Connect discovery document")
     public Map<String, Object> discovery(HttpServletRequest request) {
@@ -35,9 +43,12 @@ public class OidcDiscoveryController {
         config.put("token_endpoint", baseUrl + "/token");
         config.put("userinfo_endpoint", baseUrl + "/userinfo");
         config.put("jwks_uri", baseUrl + "/.well-known/jwks.json");
+        config.put("revocation_endpoint", baseUrl + "/revoke");
         config.put("response_types_supported", new String[] { "code", "id_token", "token" });
         config.put("subject_types_supported", new String[] { "public" });
-        config.put("id_token_signing_alg_values_supported", new String[] { "RS256" });
+        config.put("id_token_signing_alg_values_supported", jwtSigningService.getSupportedAlgorithms().stream()
+                .map(JWSAlgorithm::getName)
+                .toArray(String[]::new));
         config.put("scopes_supported", new String[] { "openid", "profile", "email" });
         config.put("token_endpoint_auth_methods_supported", new String[] { "client_secret_basic" });
         // PKCE support (RFC 7636)
@@ -0,0 +1,30 @@
+package com.example.oidc.controllers.OIDC;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import com.example.oidc.service.IAccessTokenService;
+
+@RestController
+@Tag(name = "OIDC Revocation", description = "OAuth2 token revocation endpoint (RFC 7009)")
+public class OidcRevocationController {
+    private final IAccessTokenService accessTokenService;
+
+    @Autowired
+    public OidcRevocationController(IAccessTokenService accessTokenService) {
+        this.accessTokenService = accessTokenService;
+    }
+
+    // Per RFC 7009 the response is 200 whether or not the token was known.
+    // Stateless access tokens are only revoked on the node handling this call.
+    @PostMapping("/revoke")
+    @Operation(summary = "Revoke access token", description = "Invalidates an access token before it expires")
+    public void revoke(
+            @Parameter(description = "The access token to revoke", required = true) @RequestParam("token") String token) {
+        accessTokenService.revoke(token);
+    }
+}
@@ -1,56 +1,43 @@
 package com.example.oidc.controllers.OIDC;
 
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.example.oidc.storage.AuthorizationCode;
 import com.example.oidc.storage.UserInfo;
 import com.example.oidc.storage.OidcClient;
 import com.example.oidc.storage.OidcClientRegistry;
 import com.example.oidc.storage.IOidcSessionStore;
 import com.example.oidc.dto.PkceData;
+import com.example.oidc.service.IAccessTokenService;
+import com.example.oidc.service.IJwtSigningService;
 import com.example.oidc.util.PkceValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import jakarta.servlet.http.HttpServletResponse;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import org.springframework.beans.factory.annotation.Value;
-import com.nimbusds.jose.*;
-import com.nimbusds.jose.crypto.RSASSASigner;
-import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jwt.JWTClaimsSet;
-import java.security.KeyStore;
-import java.security.PrivateKey;
 
 @RestController
 public class OidcTokenController {
     private final IOidcSessionStore oidcSessionStore;
     private final OidcClientRegistry clientRegistry;
-    private PrivateKey jwtPrivateKey;
-    @Value("${server.ssl.key-store}")
-    private String keystorePath;
-    @Value("${server.ssl.key-store-password}")
-    private String keystorePassword;
+    private final IJwtSigningService jwtSigningService;
+    private final IAccessTokenService accessTokenService;
     @Value("${oidc.issuer:https://localhost:8443}")
     private String issuer;
 
     @Autowired
-    public OidcTokenController(IOidcSessionStore oidcSessionStore, OidcClientRegistry clientRegistry) {
+    public OidcTokenController(IOidcSessionStore oidcSessionStore, OidcClientRegistry clientRegistry,
+            IJwtSigningService jwtSigningService, IAccessTokenService accessTokenService) {
         this.oidcSessionStore = oidcSessionStore;
         this.clientRegistry = clientRegistry;
-    }
-
-    @jakarta.annotation.PostConstruct
-    public void loadPrivateKey() throws Exception {
-        KeyStore ks = KeyStore.getInstance("PKCS12");
-
-        // Remove "file:" prefix if present
-        String path = keystorePath.startsWith("file:") ? keystorePath.substring(5) : keystorePath;
-
-        try (java.io.InputStream is = new FileSystemResource(path).getInputStream()) {
-            ks.load(is, keystorePassword.toCharArray());
-        }
-        jwtPrivateKey = (PrivateKey) ks.getKey("springboot", keystorePassword.toCharArray());
+        this.jwtSigningService = jwtSigningService;
+        this.accessTokenService = accessTokenService;
     }
 
     @PostMapping("/token")
@@ -66,8 +53,9 @@ public class OidcTokenController {
             return response;
         }
         String clientId = null;
+        OidcClient client = null;
         if (redirectUri != null && !redirectUri.isEmpty()) {
-            OidcClient client = clientRegistry.getClientByReturnUri(redirectUri);
+            client = clientRegistry.getClientByReturnUri(redirectUri);
             if (client != null) {
                 clientId = client.getClientId();
             }
@@ -77,8 +65,15 @@ public class OidcTokenController {
             return response;
         }
 
-        // PKCE validation: retrieve stored PKCE data
-        PkceData pkceData = oidcSessionStore.getPkceDataByCode(code);
+        // Redeem the code; it is deleted in the same step, so a replay finds nothing
+        AuthorizationCode authorizationCode = oidcSessionStore.consumeCode(code);
+        if (authorizationCode == null || authorizationCode.getUser() == null) {
+            response.put("error", "Invalid or expired authorization code");
+            return response;
+        }
+
+        // PKCE validation against the data stored with the code
+        PkceData pkceData = authorizationCode.getPkceData();
         if (pkceData != null) {
             // PKCE was used during authorization - code_verifier is required
             if (codeVerifier == null || codeVerifier.isEmpty()) {
@@ -100,29 +95,11 @@ public class OidcTokenController {
             }
         }
 
-        UserInfo user = oidcSessionStore.getUserByCode(code);
-        if (user == null) {
-            response.put("error", "Invalid or expired authorization code");
-            return response;
-        }
+        UserInfo user = authorizationCode.getUser();
         // Generate a proper JWT for access_token
         String accessToken = null;
         try {
-            JWTClaimsSet accessTokenClaims = new JWTClaimsSet.Builder()
-                    .issuer(issuer)
-                    .subject(user.getSub())
-                    .audience(clientId)
-                    .claim("scope", scope)
-                    .expirationTime(new java.util.Date(System.currentTimeMillis() + 3600 * 1000))
-                    .issueTime(new java.util.Date())
-                    .build();
-            JWSHeader accessTokenHeader = new JWSHeader.Builder(JWSAlgorithm.RS256)
-                    .keyID("springboot")
-                    .build();
-            SignedJWT accessSignedJWT = new SignedJWT(accessTokenHeader, accessTokenClaims);
-            accessSignedJWT.sign(new RSASSASigner(jwtPrivateKey));
-            accessToken = accessSignedJWT.serialize();
-            oidcSessionStore.storeToken(accessToken, user);
+            JWTClaimsSet accessTokenClaims = accessTokenService.buildClaims(user, clientId, scope);
 
             // Generate a real JWT for id_token
             JWTClaimsSet.Builder claimsBuilder = new JWTClaimsSet.Builder()
@@ -140,18 +117,20 @@ public class OidcTokenController {
                 claimsBuilder.claim("nonce", user.getNonce());
             }
 
-            JWTClaimsSet claims = claimsBuilder.build();
-            JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256)
-                    .keyID("springboot")
-                    .build();
-            SignedJWT signedJWT = new SignedJWT(header, claims);
-            signedJWT.sign(new RSASSASigner(jwtPrivateKey));
-            String idToken = signedJWT.serialize();
+            JWSAlgorithm algorithm = jwtSigningService.resolveAlgorithm(client.getSigningAlgorithm());
+            List<String> tokens = jwtSigningService.signAll(List.of(accessTokenClaims, claimsBuilder.build()),
+                    algorithm);
+            accessToken = tokens.get(0);
+            String idToken = tokens.get(1);
+            CompletionStage<Void> registered = accessTokenService.registerAsync(accessToken, user);
+
             response.put("access_token", accessToken);
             response.put("token_type", "Bearer");
-            response.put("expires_in", 3600);
+            response.put("expires_in", accessTokenService.getLifetimeSeconds());
             response.put("id_token", idToken);
             servletResponse.addHeader("Set-Cookie", "id_token=" + idToken + "; Path=/; HttpOnly; Secure");
+            // The client may call userinfo as soon as it has the response
+            registered.toCompletableFuture().join();
         } catch (Exception e) {
             response.put("error", "Failed to generate id_token: " + e.getMessage());
         }
@@ -4,18 +4,18 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.example.oidc.storage.UserInfo;
-import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.service.IAccessTokenService;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.HashMap;
 import java.util.Map;
 
 @RestController
 public class OidcUserInfoController {
-    private final IOidcSessionStore oidcSessionStore;
+    private final IAccessTokenService accessTokenService;
 
     @Autowired
-    public OidcUserInfoController(IOidcSessionStore oidcSessionStore) {
-        this.oidcSessionStore = oidcSessionStore;
+    public OidcUserInfoController(IAccessTokenService accessTokenService) {
+        this.accessTokenService = accessTokenService;
     }
 
     @GetMapping("/userinfo")
@@ -30,7 +30,7 @@ public class OidcUserInfoController {
             userInfo.put("error", "Missing access_token");
             return userInfo;
         }
-        UserInfo user = oidcSessionStore.getUserByToken(accessToken);
+        UserInfo user = accessTokenService.resolveUser(accessToken);
         if (user == null) {
             userInfo.put("error", "Invalid or expired access_token");
             return userInfo;
@@ -44,7 +44,7 @@ public class OidcUserInfoController {
             userInfo.put("date_of_birth", user.getDateOfBirth().toString());
         }
         userInfo.put("phone_number", user.getPhoneNumber());
-        userInfo.put("cert", user.getCert());
+        userInfo.put("cert", accessTokenService.resolveCertificate(user));
         return userInfo;
     }
 }
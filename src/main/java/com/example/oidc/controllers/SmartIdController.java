@@ -2,23 +2,30 @@ package com.example.oidc.controllers;
 
 import com.example.oidc.dto.SmartIdCheckResponse;
 import com.example.oidc.dto.SmartIdStartResponse;
+import com.example.oidc.service.AuthEventStreams;
 import com.example.oidc.service.ISmartIdService;
+import com.example.oidc.storage.AuthMethod;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @Tag(name = "Smart-ID Authentication", description = "Endpoints for Smart-ID authentication flow")
 public class SmartIdController {
 
     private final ISmartIdService smartIdService;
+    private final AuthEventStreams authEventStreams;
 
     @Autowired
-    public SmartIdController(ISmartIdService smartIdService) {
+    public SmartIdController(ISmartIdService smartIdService, AuthEventStreams authEventStreams) {
         this.smartIdService = smartIdService;
+        this.authEventStreams = authEventStreams;
     }
 
     @PostMapping("/smartid/start")
@@ -32,8 +39,23 @@ public class SmartIdController {
     }
 
     @GetMapping("/smartid/check")
-    @Operation(summary = "Check Smart-ID authentication status", description = "Polls the status of an ongoing Smart-ID authentication session")
-    public SmartIdCheckResponse checkSmartId(
+    @Operation(summary = "Check Smart-ID authentication status", description = "Polls the status of an ongoing Smart-ID authentication session; with wait, answers once the status changes")
+    public DeferredResult<SmartIdCheckResponse> checkSmartId(
+            @Parameter(description = "Smart-ID session identifier", required = true) @RequestParam String sessionId,
+            @Parameter(description = "OAuth2 client ID") @RequestParam(required = false) String client_id,
+            @Parameter(description = "OAuth2 redirect URI") @RequestParam(required = false) String redirect_uri,
+            @Parameter(description = "OAuth2 response type") @RequestParam(required = false) String response_type,
+            @Parameter(description = "OAuth2 scope") @RequestParam(required = false) String scope,
+            @Parameter(description = "OAuth2 state parameter") @RequestParam(required = false) String state,
+            @Parameter(description = "OIDC nonce parameter") @RequestParam(required = false) String nonce,
+            @Parameter(description = "Seconds to hold the request open until the status changes (long poll); 0 answers at once") @RequestParam(defaultValue = "0") long wait) {
+        return authEventStreams.awaitChange(AuthMethod.SMART_ID, sessionId, wait, () -> smartIdService.checkSmartId(
+                sessionId, client_id, redirect_uri, response_type, scope, state, nonce));
+    }
+
+    @GetMapping(value = "/smartid/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream Smart-ID authentication status", description = "Server-Sent Events: pending, running, then complete (with redirectUrl) or error; an alternative to polling /smartid/check")
+    public SseEmitter smartIdEvents(
             @Parameter(description = "Smart-ID session identifier", required = true) @RequestParam String sessionId,
             @Parameter(description = "OAuth2 client ID") @RequestParam(required = false) String client_id,
             @Parameter(description = "OAuth2 redirect URI") @RequestParam(required = false) String redirect_uri,
@@ -41,6 +63,7 @@ public class SmartIdController {
             @Parameter(description = "OAuth2 scope") @RequestParam(required = false) String scope,
             @Parameter(description = "OAuth2 state parameter") @RequestParam(required = false) String state,
             @Parameter(description = "OIDC nonce parameter") @RequestParam(required = false) String nonce) {
-        return smartIdService.checkSmartId(sessionId, client_id, redirect_uri, response_type, scope, state, nonce);
+        return authEventStreams.open(AuthMethod.SMART_ID, sessionId, () -> smartIdService.checkSmartId(sessionId, client_id,
+                redirect_uri, response_type, scope, state, nonce));
     }
 }
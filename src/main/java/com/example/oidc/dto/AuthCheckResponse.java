@@ -0,0 +1,17 @@
+package com.example.oidc.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Status of a Mobile-ID or Smart-ID login, as returned by the check endpoints
+ * and sent by the event streams.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AuthCheckResponse {
+    public String sessionId;
+    public Boolean complete;
+    public Boolean validClient;
+    public Boolean authorized;
+    public String error;
+    public String redirectUrl;
+}
@@ -0,0 +1,174 @@
+package com.example.oidc.service;
+
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.UserInfo;
+import com.example.oidc.util.RandomCodeGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@Service
+public class AccessTokenService implements IAccessTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessTokenService.class);
+
+    // Marks a stateless access token, which carries the user claims below.
+    // Claims without a value are left out of the token, so the user claims
+    // themselves cannot tell it apart from a token stored in the session store
+    private static final String USER_CLAIMS = "uc";
+    // User claims carried by stateless access tokens
+    private static final String GIVEN_NAME = "given_name";
+    private static final String FAMILY_NAME = "family_name";
+    private static final String COUNTRY = "country";
+    private static final String BIRTHDATE = "birthdate";
+    private static final String PHONE_NUMBER = "phone_number";
+    private static final String CERT_FINGERPRINT = "cert_sha256";
+    // Full certificate, only found in tokens issued before certificates were
+    // stored by fingerprint
+    private static final String CERT = "cert";
+
+    private final IOidcSessionStore oidcSessionStore;
+    private final IJwtSigningService jwtSigningService;
+    private final TokenRevocationList revocationList;
+
+    @Value("${oidc.issuer:https://localhost:8443}")
+    private String issuer;
+
+    @Value("${oidc.access-token.lifetime-seconds:3600}")
+    private long lifetimeSeconds;
+
+    @Value("${oidc.access-token.stateless:false}")
+    private boolean stateless;
+
+    @Autowired
+    public AccessTokenService(IOidcSessionStore oidcSessionStore, IJwtSigningService jwtSigningService,
+            TokenRevocationList revocationList) {
+        this.oidcSessionStore = oidcSessionStore;
+        this.jwtSigningService = jwtSigningService;
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    public JWTClaimsSet buildClaims(UserInfo user, String clientId, String scope) {
+        Date now = new Date();
+        JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject(user.getSub())
+                .audience(clientId)
+                .jwtID(RandomCodeGenerator.generateRandomCode())
+                .claim("scope", scope)
+                .expirationTime(new Date(now.getTime() + lifetimeSeconds * 1000))
+                .issueTime(now);
+        if (stateless) {
+            builder.claim(USER_CLAIMS, true)
+                    .claim(GIVEN_NAME, user.getGivenName())
+                    .claim(FAMILY_NAME, user.getSurname())
+                    .claim(COUNTRY, user.getCountry())
+                    .claim(BIRTHDATE, user.getDateOfBirth() != null ? user.getDateOfBirth().toString() : null)
+                    .claim(PHONE_NUMBER, user.getPhoneNumber())
+                    .claim(CERT_FINGERPRINT, user.getCertFingerprint());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public long getLifetimeSeconds() {
+        return lifetimeSeconds;
+    }
+
+    @Override
+    public void register(String accessToken, UserInfo user) {
+        if (!stateless) {
+            oidcSessionStore.storeToken(accessToken, user);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> registerAsync(String accessToken, UserInfo user) {
+        if (stateless) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return oidcSessionStore.storeTokenAsync(accessToken, user);
+    }
+
+    @Override
+    public UserInfo resolveUser(String accessToken) {
+        if (stateless) {
+            JWTClaimsSet claims = verify(accessToken);
+            if (claims == null) {
+                return null;
+            }
+            // Tokens issued before stateless mode was switched on carry no user
+            // claims and are still resolved from the session store
+            if (Boolean.TRUE.equals(claims.getClaim(USER_CLAIMS))) {
+                return toUserInfo(claims);
+            }
+        }
+        return oidcSessionStore.getUserByToken(accessToken);
+    }
+
+    private JWTClaimsSet verify(String accessToken) {
+        JWTClaimsSet claims = jwtSigningService.verify(accessToken);
+        if (claims == null) {
+            return null;
+        }
+        Date exp = claims.getExpirationTime();
+        if (exp == null || exp.before(new Date())) {
+            return null;
+        }
+        if (!issuer.equals(claims.getIssuer())) {
+            return null;
+        }
+        if (claims.getJWTID() != null && revocationList.isRevoked(claims.getJWTID())) {
+            return null;
+        }
+        return claims;
+    }
+
+    private static UserInfo toUserInfo(JWTClaimsSet claims) {
+        try {
+            String birthdate = claims.getStringClaim(BIRTHDATE);
+            UserInfo user = new UserInfo(
+                    claims.getSubject(),
+                    claims.getStringClaim(GIVEN_NAME),
+                    claims.getStringClaim(FAMILY_NAME),
+                    claims.getStringClaim(COUNTRY),
+                    birthdate != null ? LocalDate.parse(birthdate) : null,
+                    claims.getStringClaim(PHONE_NUMBER),
+                    null);
+            user.setCertFingerprint(claims.getStringClaim(CERT_FINGERPRINT));
+            user.setCert(claims.getStringClaim(CERT));
+            return user;
+        } catch (ParseException e) {
+            log.error("Invalid user claims in access token for sub {}: {}", claims.getSubject(), e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String resolveCertificate(UserInfo user) {
+        if (user.getCert() != null) {
+            return user.getCert();
+        }
+        return oidcSessionStore.getCertificate(user.getCertFingerprint());
+    }
+
+    @Override
+    public void revoke(String accessToken) {
+        oidcSessionStore.removeToken(accessToken);
+        // Only tokens with a valid signature may put their jti on the list
+        JWTClaimsSet claims = jwtSigningService.verify(accessToken);
+        if (claims != null && claims.getJWTID() != null && claims.getExpirationTime() != null) {
+            revocationList.revoke(claims.getJWTID(), claims.getExpirationTime().getTime());
+        }
+    }
+}
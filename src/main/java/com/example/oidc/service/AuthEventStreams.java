@@ -0,0 +1,220 @@
+package com.example.oidc.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.oidc.dto.AuthCheckResponse;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.IRedisClient;
+import com.example.oidc.storage.KeyspaceTtlPolicy;
+
+/**
+ * Tells the browser about a Mobile-ID / Smart-ID login as soon as its state
+ * changes, instead of it polling the check endpoints in a loop: as a
+ * Server-Sent Events stream, or as a check that is held open (long poll).
+ * <p>
+ * A stream sends "pending", then "running" once the user has been prompted,
+ * and finally "complete" (with redirectUrl) or "error", each with the same
+ * JSON as the check endpoint, and then closes. State changes arrive through
+ * the session store's pub/sub channel, so the browser can be connected to any
+ * node, not just the one polling the upstream. The final answer is produced by
+ * the check endpoint's own logic, which issues the authorization code. Like a
+ * check, opening a stream takes over a login whose polling node went away.
+ */
+@Service
+public class AuthEventStreams {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthEventStreams.class);
+    static final String CHECK_FAILED_ERROR = "Authentication check failed";
+
+    private final IOidcSessionStore oidcSessionStore;
+    private final KeyspaceTtlPolicy ttlPolicy;
+    private final AuthSessionPoller authSessionPoller;
+    private final long maxWaitSeconds;
+
+    public AuthEventStreams(IOidcSessionStore oidcSessionStore, KeyspaceTtlPolicy ttlPolicy,
+            AuthSessionPoller authSessionPoller,
+            @Value("${oidc.events.max-wait-seconds:30}") long maxWaitSeconds) {
+        this.oidcSessionStore = oidcSessionStore;
+        this.ttlPolicy = ttlPolicy;
+        this.authSessionPoller = authSessionPoller;
+        this.maxWaitSeconds = maxWaitSeconds;
+    }
+
+    /**
+     * Answers a check once the login's state changes, or after the wait,
+     * without holding a request thread meanwhile. A login that has already
+     * finished is answered straight away.
+     *
+     * @param method      the authentication method of the session
+     * @param sessionId   the session to check
+     * @param waitSeconds how long to wait for a change; capped at
+     *                    oidc.events.max-wait-seconds, 0 answers at once
+     * @param check       the check endpoint's logic for this session and client
+     * @return the check response, when there is one
+     */
+    public <T extends AuthCheckResponse> DeferredResult<T> awaitChange(AuthMethod method, String sessionId,
+            long waitSeconds, Supplier<T> check) {
+        long wait = Math.min(Math.max(0, waitSeconds), maxWaitSeconds);
+        DeferredResult<T> result = new DeferredResult<>(TimeUnit.SECONDS.toMillis(wait));
+        if (wait == 0) {
+            result.setResult(check.get());
+            return result;
+        }
+        AtomicBoolean answered = new AtomicBoolean();
+        Runnable answer = () -> {
+            if (!answered.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                result.setResult(check.get());
+            } catch (RuntimeException e) {
+                // Answered with the error instead of a timeout after the full wait
+                log.warn("Check failed for sessionId {}: {}", sessionId, e.getMessage());
+                result.setErrorResult(e);
+            }
+        };
+        // Subscribe before reading, so no change falls in between
+        IRedisClient.Subscription subscription = oidcSessionStore.subscribeAuthSession(sessionId,
+                state -> answer.run());
+        result.onCompletion(subscription::close);
+        result.onTimeout(answer);
+        result.onError(e -> subscription.close());
+
+        AuthSession session = oidcSessionStore.getAuthSession(method, sessionId);
+        authSessionPoller.resumeIfAbandoned(method, sessionId, session);
+        if (session == null || session.getState() == AuthSession.State.AUTHENTICATED
+                || session.getState() == AuthSession.State.FAILED) {
+            answer.run();
+        }
+        return result;
+    }
+
+    /**
+     * Opens the stream of a login.
+     *
+     * @param method    the authentication method of the session
+     * @param sessionId the session to follow
+     * @param check     the check endpoint's logic for this session and client;
+     *                  called once the login has finished
+     * @return the stream, closed after the final event or when the session
+     *         would have expired
+     */
+    public SseEmitter open(AuthMethod method, String sessionId, Supplier<? extends AuthCheckResponse> check) {
+        SseEmitter emitter = newEmitter(TimeUnit.SECONDS.toMillis(ttlPolicy.sessionSeconds(method)));
+        Stream stream = new Stream(emitter, sessionId, check);
+        // Subscribe before reading, so no change falls in between
+        IRedisClient.Subscription subscription = oidcSessionStore.subscribeAuthSession(sessionId, stream::onState);
+        stream.subscription.set(subscription);
+        emitter.onCompletion(stream::close);
+        emitter.onTimeout(stream::close);
+        emitter.onError(e -> stream.close());
+
+        AuthSession session = oidcSessionStore.getAuthSession(method, sessionId);
+        authSessionPoller.resumeIfAbandoned(method, sessionId, session);
+        if (session == null) {
+            stream.finish(() -> {
+                AuthCheckResponse response = new AuthCheckResponse();
+                response.sessionId = sessionId;
+                response.complete = false;
+                response.error = "Session not found";
+                return response;
+            });
+        } else {
+            stream.onState(session.getState());
+        }
+        return emitter;
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private static final class Stream {
+        private final SseEmitter emitter;
+        private final String sessionId;
+        private final Supplier<? extends AuthCheckResponse> check;
+        private final AtomicReference<IRedisClient.Subscription> subscription = new AtomicReference<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Stream(SseEmitter emitter, String sessionId, Supplier<? extends AuthCheckResponse> check) {
+            this.emitter = emitter;
+            this.sessionId = sessionId;
+            this.check = check;
+        }
+
+        private void onState(AuthSession.State state) {
+            switch (state) {
+                case PENDING -> {
+                    if (!running.get()) {
+                        send("pending", progress());
+                    }
+                }
+                case RUNNING -> {
+                    if (running.compareAndSet(false, true)) {
+                        send("running", progress());
+                    }
+                }
+                case AUTHENTICATED, FAILED -> finish(check);
+            }
+        }
+
+        // Claimed before the check runs: only one final check, which issues the code
+        private void finish(Supplier<? extends AuthCheckResponse> result) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            AuthCheckResponse response;
+            try {
+                response = result.get();
+            } catch (RuntimeException e) {
+                // Closed now rather than left open until the session would have expired
+                log.warn("Check failed for sessionId {}: {}", sessionId, e.getMessage());
+                response = progress();
+                response.error = CHECK_FAILED_ERROR;
+                send("error", response);
+                emitter.completeWithError(e);
+                return;
+            }
+            send(response.redirectUrl != null ? "complete" : "error", response);
+            emitter.complete();
+        }
+
+        private AuthCheckResponse progress() {
+            AuthCheckResponse response = new AuthCheckResponse();
+            response.sessionId = sessionId;
+            response.complete = false;
+            return response;
+        }
+
+        private void send(String event, AuthCheckResponse response) {
+            try {
+                emitter.send(SseEmitter.event().name(event).data(response));
+            } catch (IOException | IllegalStateException e) {
+                // The browser went away; completion closes the subscription
+                log.debug("Could not send {} for sessionId {}: {}", event, sessionId, e.getMessage());
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void close() {
+            IRedisClient.Subscription current = subscription.getAndSet(null);
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.oidc.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.KeyspaceTtlPolicy;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Polls the Mobile-ID / Smart-ID service in the background for logins
+ * started on this node, so status checks from the browser only read the
+ * session store instead of waiting for the user.
+ * <p>
+ * Each status request runs on a virtual thread, so a request blocked on the
+ * upstream's long poll holds no platform thread; a single scheduler thread
+ * spaces the requests of a login by oidc.poller.interval-millis. The number of
+ * platform threads therefore stays the same however many logins are pending.
+ * A login is polled until its final state is recorded, until it fails
+ * oidc.poller.max-errors times in a row, or until its session would have
+ * expired or is gone.
+ * <p>
+ * The polling node holds a lease on the login, stored in its session and
+ * renewed while it polls (oidc.poller.lease-millis). If the node goes away,
+ * for example in a rolling deploy, the lease runs out and the next node that
+ * reads the session takes it over with {@link #resumeIfAbandoned}, rebuilding
+ * the status request from the stored session.
+ */
+@Component
+public class AuthSessionPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthSessionPoller.class);
+    static final String TIMEOUT_ERROR = "Authentication timed out";
+
+    /**
+     * One status request of a login.
+     */
+    @FunctionalInterface
+    public interface StatusCheck {
+        /**
+         * @return whether the final state is recorded and polling can stop
+         */
+        boolean poll() throws Exception;
+    }
+
+    /**
+     * Rebuilds the status request of a login from its stored session.
+     */
+    @FunctionalInterface
+    public interface Resumer {
+        /**
+         * @return the status request, or null if the session lacks what it needs
+         */
+        StatusCheck statusCheck(String sessionId, AuthSession session);
+    }
+
+    private final IOidcSessionStore oidcSessionStore;
+    private final KeyspaceTtlPolicy ttlPolicy;
+    private final long intervalMillis;
+    private final int maxErrors;
+    private final long leaseMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService requests;
+    private final AtomicInteger pending = new AtomicInteger();
+    // Logins polled by this node, so one isn't polled twice here
+    private final Set<String> polling = ConcurrentHashMap.newKeySet();
+    private final Map<AuthMethod, Resumer> resumers = new ConcurrentHashMap<>();
+
+    public AuthSessionPoller(IOidcSessionStore oidcSessionStore, KeyspaceTtlPolicy ttlPolicy,
+            @Value("${oidc.poller.interval-millis:500}") long intervalMillis,
+            @Value("${oidc.poller.max-errors:3}") int maxErrors,
+            @Value("${oidc.poller.lease-millis:30000}") long leaseMillis,
+            MeterRegistry meterRegistry) {
+        this.oidcSessionStore = oidcSessionStore;
+        this.ttlPolicy = ttlPolicy;
+        this.intervalMillis = intervalMillis;
+        this.maxErrors = maxErrors;
+        this.leaseMillis = leaseMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "auth-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        this.requests = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("auth-poll-", 0).factory());
+        Gauge.builder("oidc.auth.polls.pending", pending, AtomicInteger::get)
+                .description("Logins whose upstream status is being polled")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        requests.shutdownNow();
+    }
+
+    /**
+     * Registers how logins of a method are resumed from their stored session.
+     *
+     * @param method  the authentication method
+     * @param resumer rebuilds a login's status request
+     */
+    public void registerResumer(AuthMethod method, Resumer resumer) {
+        resumers.put(method, resumer);
+    }
+
+    /**
+     * Starts polling a login whose session is already stored, taking its lease.
+     *
+     * @param method    the authentication method, which sets how long to poll
+     * @param sessionId the session to record the outcome in
+     * @param check     one status request; records the final state itself
+     * @return false if this node already polls the login or its session is gone
+     */
+    public boolean start(AuthMethod method, String sessionId, StatusCheck check) {
+        if (!polling.add(sessionId)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Login login = new Login(sessionId, check, now + TimeUnit.SECONDS.toMillis(ttlPolicy.sessionSeconds(method)));
+        if (!renewLease(login, now)) {
+            polling.remove(sessionId);
+            return false;
+        }
+        pending.incrementAndGet();
+        submit(login);
+        return true;
+    }
+
+    /**
+     * Takes over a pending login whose polling node went away: its lease has
+     * run out, or it was started before logins had leases. Two nodes taking
+     * over at the same moment both poll it, which is harmless as each records
+     * the same outcome.
+     *
+     * @param method    the authentication method of the session
+     * @param sessionId the session
+     * @param session   the session as just read
+     * @return whether this node started polling the login
+     */
+    public boolean resumeIfAbandoned(AuthMethod method, String sessionId, AuthSession session) {
+        if (session == null || (session.getState() != AuthSession.State.PENDING
+                && session.getState() != AuthSession.State.RUNNING)) {
+            return false;
+        }
+        if (session.getPolledUntil() != null && session.getPolledUntil() > System.currentTimeMillis()) {
+            return false;
+        }
+        Resumer resumer = resumers.get(method);
+        StatusCheck check;
+        try {
+            check = resumer != null ? resumer.statusCheck(sessionId, session) : null;
+        } catch (RuntimeException e) {
+            log.warn("Cannot resume polling of sessionId {}: {}", sessionId, e.getMessage());
+            return false;
+        }
+        if (check == null || !start(method, sessionId, check)) {
+            return false;
+        }
+        log.info("Resumed polling of {} sessionId {} after its lease ran out", method, sessionId);
+        return true;
+    }
+
+    private boolean renewLease(Login login, long now) {
+        long polledUntil = now + leaseMillis;
+        if (!oidcSessionStore.renewPollLease(login.sessionId, polledUntil)) {
+            return false;
+        }
+        login.leaseUntil = polledUntil;
+        return true;
+    }
+
+    private void submit(Login login) {
+        try {
+            requests.execute(() -> poll(login));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            stop(login);
+        }
+    }
+
+    private void stop(Login login) {
+        polling.remove(login.sessionId);
+        pending.decrementAndGet();
+    }
+
+    private void poll(Login login) {
+        long now = System.currentTimeMillis();
+        // Renewed at half time, so the lease outlasts the status request below
+        if (now >= login.leaseUntil - leaseMillis / 2 && !renewLease(login, now)) {
+            log.info("Stopped polling sessionId {}: its session is gone", login.sessionId);
+            stop(login);
+            return;
+        }
+        boolean done;
+        boolean answered = false;
+        try {
+            done = login.check.poll();
+            answered = true;
+            login.errors = 0;
+        } catch (Exception e) {
+            login.errors++;
+            log.warn("Status request {} of {} failed for sessionId {}: {}", login.errors, maxErrors,
+                    login.sessionId, e.getMessage());
+            done = login.errors >= maxErrors
+                    && fail(login, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        if (!done && System.currentTimeMillis() >= login.deadline) {
+            log.warn("Gave up polling sessionId {} after its session lifetime", login.sessionId);
+            done = fail(login, TIMEOUT_ERROR);
+        }
+        if (done) {
+            stop(login);
+            return;
+        }
+        if (answered && !login.running) {
+            // The upstream answered and is waiting for the user
+            login.running = true;
+            oidcSessionStore.updateAuthSessionState(login.sessionId, AuthSession.State.RUNNING, null);
+        }
+        try {
+            scheduler.schedule(() -> submit(login), intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            stop(login);
+        }
+    }
+
+    private boolean fail(Login login, String error) {
+        oidcSessionStore.updateAuthSessionState(login.sessionId, AuthSession.State.FAILED, error);
+        return true;
+    }
+
+    private static final class Login {
+        private final String sessionId;
+        private final StatusCheck check;
+        private final long deadline;
+        // Consecutive failed requests; only touched by the request in flight
+        private int errors;
+        private boolean running;
+        private long leaseUntil;
+
+        private Login(String sessionId, StatusCheck check, long deadline) {
+            this.sessionId = sessionId;
+            this.check = check;
+            this.deadline = deadline;
+        }
+    }
+}
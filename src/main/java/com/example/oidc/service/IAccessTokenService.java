@@ -0,0 +1,75 @@
+package com.example.oidc.service;
+
+import com.example.oidc.storage.UserInfo;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Interface for access token service.
+ * Builds access token claims and resolves access tokens back to user
+ * information, either from the session store or, in stateless mode, from the
+ * signed token itself.
+ */
+public interface IAccessTokenService {
+
+        /**
+         * Builds the claims of a new access token.
+         *
+         * @param user     the authenticated user
+         * @param clientId the OAuth2 client identifier (token audience)
+         * @param scope    the granted scope
+         * @return the access token claims
+         */
+        JWTClaimsSet buildClaims(UserInfo user, String clientId, String scope);
+
+        /**
+         * Returns the access token lifetime.
+         *
+         * @return the lifetime in seconds
+         */
+        long getLifetimeSeconds();
+
+        /**
+         * Records a newly issued access token. In stateless mode this is a no-op.
+         *
+         * @param accessToken the serialized access token
+         * @param user        the user the token was issued to
+         */
+        void register(String accessToken, UserInfo user);
+
+        /**
+         * Asynchronous {@link #register}, so the token response can be built
+         * while the token is being stored.
+         *
+         * @param accessToken the serialized access token
+         * @param user        the user the token was issued to
+         * @return completes when the token is recorded
+         */
+        CompletionStage<Void> registerAsync(String accessToken, UserInfo user);
+
+        /**
+         * Resolves an access token to the user it was issued to.
+         *
+         * @param accessToken the serialized access token
+         * @return the user information or null if the token is invalid, expired or
+         *         revoked
+         */
+        UserInfo resolveUser(String accessToken);
+
+        /**
+         * Returns the user's certificate, looking it up by fingerprint if the
+         * user record only references it.
+         *
+         * @param user the resolved user
+         * @return the base64 encoded certificate or null if there is none
+         */
+        String resolveCertificate(UserInfo user);
+
+        /**
+         * Revokes an access token before it expires.
+         *
+         * @param accessToken the serialized access token
+         */
+        void revoke(String accessToken);
+}
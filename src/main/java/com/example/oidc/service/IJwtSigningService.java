@@ -0,0 +1,79 @@
+package com.example.oidc.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.List;
+
+/**
+ * Interface for JWT signing service.
+ * Signs access tokens and id_tokens with the provider's signing keys and
+ * publishes the matching public keys.
+ */
+public interface IJwtSigningService {
+
+        /**
+         * Signs a claims set with the default signing algorithm.
+         *
+         * @param claims the JWT claims to sign
+         * @return the serialized signed JWT
+         * @throws JOSEException if signing fails
+         */
+        String sign(JWTClaimsSet claims) throws JOSEException;
+
+        /**
+         * Signs a claims set with the key for the given algorithm.
+         *
+         * @param claims    the JWT claims to sign
+         * @param algorithm the signing algorithm (RS256, ES256 or EdDSA)
+         * @return the serialized signed JWT
+         * @throws JOSEException if the algorithm is not active or signing fails
+         */
+        String sign(JWTClaimsSet claims, JWSAlgorithm algorithm) throws JOSEException;
+
+        /**
+         * Signs several claims sets in parallel on the signing pool.
+         *
+         * @param claims    the JWT claims to sign
+         * @param algorithm the signing algorithm (RS256, ES256 or EdDSA)
+         * @return the serialized signed JWTs, in the same order as the input
+         * @throws JOSEException if the algorithm is not active or any of the
+         *                       tokens fails to sign
+         */
+        List<String> signAll(List<JWTClaimsSet> claims, JWSAlgorithm algorithm) throws JOSEException;
+
+        /**
+         * Verifies the signature of a token issued by this provider. Expiry and
+         * other claims are left to the caller.
+         *
+         * @param token the serialized signed JWT
+         * @return the token claims, or null if the token is malformed, signed with
+         *         an unknown key or the signature does not match
+         */
+        JWTClaimsSet verify(String token);
+
+        /**
+         * Resolves the algorithm a client's tokens are signed with.
+         *
+         * @param requested the algorithm configured for the client, or null
+         * @return the requested algorithm, or the default one if none was requested
+         * @throws JOSEException if the requested algorithm is not active
+         */
+        JWSAlgorithm resolveAlgorithm(String requested) throws JOSEException;
+
+        /**
+         * Returns the signing algorithms with an active key.
+         *
+         * @return the active algorithms, default algorithm first
+         */
+        List<JWSAlgorithm> getSupportedAlgorithms();
+
+        /**
+         * Returns the public keys of all active signing keys.
+         *
+         * @return the public JWK set
+         */
+        JWKSet getPublicJwkSet();
+}
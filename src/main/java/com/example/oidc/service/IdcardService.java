@@ -3,8 +3,9 @@ package com.example.oidc.service;
 import com.example.oidc.dto.IdCardChallengeResponse;
 import com.example.oidc.dto.IdCardLoginRequest;
 import com.example.oidc.dto.IdCardLoginResponse;
-import com.example.oidc.dto.IdCardSession;
 import com.example.oidc.dto.PkceData;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
 import com.example.oidc.storage.OidcClient;
 import com.example.oidc.storage.OidcClientRegistry;
 import com.example.oidc.storage.IOidcSessionStore;
@@ -21,6 +22,7 @@ import java.security.cert.X509Certificate;
 import java.time.LocalDate;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -56,7 +58,12 @@ public class IdcardService implements IIdcardService {
         IdCardChallengeResponse resp = new IdCardChallengeResponse();
         String sessionId = RandomCodeGenerator.generateRandomCode();
 
-        IdCardSession session = new IdCardSession(false, challengeNonce.getBase64EncodedNonce());
+        AuthSession session = new AuthSession(AuthMethod.ID_CARD);
+        session.setChallengeNonce(challengeNonce.getBase64EncodedNonce());
+        session.setClientId(clientId);
+        session.setRedirectUri(redirectUri);
+        session.setOidcState(state);
+        session.setNonce(nonce);
 
         // Store PKCE data in session if provided
         if (codeChallenge != null && !codeChallenge.isEmpty()) {
@@ -65,9 +72,11 @@ public class IdcardService implements IIdcardService {
             session.setPkceData(pkceData);
         }
 
-        oidcSessionStore.storeIdCardSession(sessionId, session);
+        CompletionStage<Void> sessionStored = oidcSessionStore.storeAuthSessionAsync(sessionId, session);
         resp.nonce = challengeNonce.getBase64EncodedNonce();
         resp.sessionId = sessionId;
+        // The browser posts the signed challenge with this session id
+        sessionStored.toCompletableFuture().join();
         return resp;
     }
 
@@ -98,9 +107,9 @@ public class IdcardService implements IIdcardService {
             return resp;
         }
 
-        IdCardSession idCardSession = null;
+        AuthSession idCardSession = null;
         if (sessionId != null && !sessionId.isBlank()) {
-            idCardSession = oidcSessionStore.getIdCardSession(sessionId);
+            idCardSession = oidcSessionStore.getAuthSession(AuthMethod.ID_CARD, sessionId);
             if (idCardSession == null) {
                 resp.error = "Session not found or expired";
                 return resp;
@@ -162,13 +171,19 @@ public class IdcardService implements IIdcardService {
                 null,
                 nonce);
         user.setCert(certBase64);
-        oidcSessionStore.storeCode(code, user, idCardSession != null ? idCardSession.getPkceData() : null);
+        CompletionStage<Boolean> codeStored = oidcSessionStore.finalizeSessionAsync(AuthMethod.ID_CARD, sessionId,
+                code, user);
 
         StringBuilder redirect = new StringBuilder(client.getRedirectUri(redirectUri))
                 .append("?code=").append(code);
         if (state != null) {
             redirect.append("&state=").append(state);
         }
+        // The code must be redeemable once the client follows the redirect
+        if (!codeStored.toCompletableFuture().join()) {
+            resp.error = "Session not found or expired";
+            return resp;
+        }
         resp.redirectUrl = redirect.toString();
         return resp;
     }
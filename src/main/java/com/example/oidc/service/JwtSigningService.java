@@ -0,0 +1,339 @@
+package com.example.oidc.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.Ed25519Signer;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class JwtSigningService implements IJwtSigningService {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtSigningService.class);
+    private static final String KEY_ALIAS = "springboot";
+
+    // Active keys by algorithm, default algorithm first
+    private final Map<JWSAlgorithm, SigningKey> signingKeys = new LinkedHashMap<>();
+    private final JWSAlgorithm defaultAlgorithm;
+    private final JWKSet publicJwkSet;
+    private final ThreadPoolExecutor signingPool;
+
+    /**
+     * Key, signer and serialized protected header for one algorithm. The header
+     * only depends on alg/kid, so it is encoded once instead of per token.
+     */
+    private record SigningKey(JWK jwk, JWSSigner signer, JWSVerifier verifier, JWSHeader header,
+            String encodedHeader) {
+    }
+
+    @Autowired
+    public JwtSigningService(
+            @Value("${server.ssl.key-store}") String keystorePath,
+            @Value("${server.ssl.key-store-password}") String keystorePassword,
+            @Value("${oidc.signing.algorithms:RS256}") List<String> algorithms,
+            @Value("${oidc.signing.default-algorithm:RS256}") String defaultAlgorithm,
+            @Value("${oidc.signing.jwks-path:}") String jwksPath,
+            @Value("${oidc.signing.pool-size:0}") int poolSize,
+            @Value("${oidc.signing.queue-capacity:256}") int queueCapacity) {
+        this(loadKeys(keystorePath, keystorePassword, algorithms, jwksPath), JWSAlgorithm.parse(defaultAlgorithm),
+                poolSize, queueCapacity);
+    }
+
+    public JwtSigningService(List<JWK> keys, JWSAlgorithm defaultAlgorithm, int poolSize, int queueCapacity) {
+        this.defaultAlgorithm = defaultAlgorithm;
+        List<JWK> ordered = new ArrayList<>(keys);
+        ordered.sort(Comparator.comparing(jwk -> !defaultAlgorithm.getName().equals(jwk.getAlgorithm().getName())));
+        List<JWK> publicKeys = new ArrayList<>();
+        for (JWK jwk : ordered) {
+            JWSAlgorithm algorithm = JWSAlgorithm.parse(jwk.getAlgorithm().getName());
+            JWSHeader header = new JWSHeader.Builder(algorithm)
+                    .keyID(jwk.getKeyID())
+                    .build();
+            signingKeys.put(algorithm, new SigningKey(jwk, createSigner(jwk), createVerifier(jwk), header,
+                    header.toBase64URL().toString()));
+            publicKeys.add(jwk.toPublicJWK());
+            log.info("Loaded {} signing key kid='{}'", algorithm, jwk.getKeyID());
+        }
+        if (!signingKeys.containsKey(defaultAlgorithm)) {
+            throw new IllegalStateException("No signing key for default algorithm " + defaultAlgorithm
+                    + "; it must be listed in oidc.signing.algorithms");
+        }
+        this.publicJwkSet = new JWKSet(publicKeys);
+
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        // Bounded queue; when it is full the request thread signs the token itself
+        this.signingPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "jwt-signer-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        log.info("JWT signing pool started with {} threads (queue capacity {})", threads, queueCapacity);
+    }
+
+    private static JWSSigner createSigner(JWK jwk) {
+        try {
+            if (jwk instanceof RSAKey rsaKey) {
+                return new RSASSASigner(rsaKey);
+            } else if (jwk instanceof ECKey ecKey) {
+                return new ECDSASigner(ecKey);
+            } else if (jwk instanceof OctetKeyPair octetKeyPair) {
+                return new Ed25519Signer(octetKeyPair);
+            }
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid signing key kid='" + jwk.getKeyID() + "'", e);
+        }
+        throw new IllegalStateException("Unsupported signing key type " + jwk.getKeyType());
+    }
+
+    private static JWSVerifier createVerifier(JWK jwk) {
+        try {
+            if (jwk instanceof RSAKey rsaKey) {
+                return new RSASSAVerifier(rsaKey.toPublicJWK());
+            } else if (jwk instanceof ECKey ecKey) {
+                return new ECDSAVerifier(ecKey.toPublicJWK());
+            } else if (jwk instanceof OctetKeyPair octetKeyPair) {
+                return new Ed25519Verifier(octetKeyPair.toPublicJWK());
+            }
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid signing key kid='" + jwk.getKeyID() + "'", e);
+        }
+        throw new IllegalStateException("Unsupported signing key type " + jwk.getKeyType());
+    }
+
+    private static List<JWK> loadKeys(String keystorePath, String keystorePassword, List<String> algorithms,
+            String jwksPath) {
+        JWKSet configuredKeys = loadJwkSet(jwksPath);
+        List<JWK> keys = new ArrayList<>();
+        for (String name : algorithms) {
+            JWSAlgorithm algorithm = JWSAlgorithm.parse(name.trim());
+            if (JWSAlgorithm.RS256.equals(algorithm)) {
+                keys.add(loadRsaKey(keystorePath, keystorePassword));
+            } else if (JWSAlgorithm.ES256.equals(algorithm)) {
+                keys.add(findOrGenerate(configuredKeys, algorithm, Curve.P_256));
+            } else if (JWSAlgorithm.EdDSA.equals(algorithm) || JWSAlgorithm.Ed25519.equals(algorithm)) {
+                keys.add(findOrGenerate(configuredKeys, JWSAlgorithm.EdDSA, Curve.Ed25519));
+            } else {
+                throw new IllegalStateException("Unsupported signing algorithm in oidc.signing.algorithms: " + name);
+            }
+        }
+        return keys;
+    }
+
+    private static RSAKey loadRsaKey(String keystorePath, String keystorePassword) {
+        try {
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+
+            // Remove "file:" prefix if present
+            String path = keystorePath.startsWith("file:") ? keystorePath.substring(5) : keystorePath;
+
+            try (InputStream is = new FileSystemResource(path).getInputStream()) {
+                ks.load(is, keystorePassword.toCharArray());
+            }
+            RSAPublicKey publicKey = (RSAPublicKey) ks.getCertificate(KEY_ALIAS).getPublicKey();
+            PrivateKey privateKey = (PrivateKey) ks.getKey(KEY_ALIAS, keystorePassword.toCharArray());
+            // kid stays "springboot" so relying parties caching the old JWKS keep working
+            return new RSAKey.Builder(publicKey)
+                    .privateKey(privateKey)
+                    .keyID(KEY_ALIAS)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.RS256)
+                    .build();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load JWT signing key from " + keystorePath, e);
+        }
+    }
+
+    private static JWKSet loadJwkSet(String jwksPath) {
+        if (jwksPath == null || jwksPath.isBlank()) {
+            return new JWKSet();
+        }
+        try {
+            JWKSet jwkSet = JWKSet.load(new File(jwksPath));
+            log.info("Loaded {} signing keys from {}", jwkSet.getKeys().size(), jwksPath);
+            return jwkSet;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load signing keys from oidc.signing.jwks-path " + jwksPath, e);
+        }
+    }
+
+    private static JWK findOrGenerate(JWKSet configuredKeys, JWSAlgorithm algorithm, Curve curve) {
+        for (JWK jwk : configuredKeys.getKeys()) {
+            if (!jwk.isPrivate()) {
+                continue;
+            }
+            if (jwk instanceof ECKey ecKey && curve.equals(ecKey.getCurve())) {
+                return new ECKey.Builder(ecKey).algorithm(algorithm).keyUse(KeyUse.SIGNATURE).build();
+            }
+            if (jwk instanceof OctetKeyPair okp && curve.equals(okp.getCurve())) {
+                return new OctetKeyPair.Builder(okp).algorithm(algorithm).keyUse(KeyUse.SIGNATURE).build();
+            }
+        }
+        // Generated keys live only as long as this node; multi-node deployments
+        // should provide them through oidc.signing.jwks-path instead
+        log.warn("No {} key found in oidc.signing.jwks-path, generating one for this node", algorithm);
+        try {
+            if (Curve.Ed25519.equals(curve)) {
+                return new OctetKeyPairGenerator(curve)
+                        .algorithm(algorithm)
+                        .keyUse(KeyUse.SIGNATURE)
+                        .keyIDFromThumbprint(true)
+                        .generate();
+            }
+            return new ECKeyGenerator(curve)
+                    .algorithm(algorithm)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .keyIDFromThumbprint(true)
+                    .generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Failed to generate " + algorithm + " signing key", e);
+        }
+    }
+
+    @Override
+    public String sign(JWTClaimsSet claims) throws JOSEException {
+        return sign(claims, defaultAlgorithm);
+    }
+
+    @Override
+    public String sign(JWTClaimsSet claims, JWSAlgorithm algorithm) throws JOSEException {
+        return sign(claims, signingKey(algorithm));
+    }
+
+    private static String sign(JWTClaimsSet claims, SigningKey key) throws JOSEException {
+        String signingInput = key.encodedHeader() + '.' + Base64URL.encode(claims.toString());
+        Base64URL signature = key.signer().sign(key.header(), signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + '.' + signature;
+    }
+
+    @Override
+    public List<String> signAll(List<JWTClaimsSet> claims, JWSAlgorithm algorithm) throws JOSEException {
+        SigningKey key = signingKey(algorithm);
+        if (claims.size() == 1) {
+            return List.of(sign(claims.get(0), key));
+        }
+        // Hand all but the first token to the pool and sign the first one on the
+        // calling thread meanwhile
+        List<Future<String>> pending = new ArrayList<>(claims.size() - 1);
+        for (JWTClaimsSet c : claims.subList(1, claims.size())) {
+            pending.add(signingPool.submit(() -> sign(c, key)));
+        }
+        List<String> tokens = new ArrayList<>(claims.size());
+        tokens.add(sign(claims.get(0), key));
+        for (Future<String> future : pending) {
+            tokens.add(await(future));
+        }
+        return tokens;
+    }
+
+    private SigningKey signingKey(JWSAlgorithm algorithm) throws JOSEException {
+        SigningKey key = signingKeys.get(algorithm);
+        if (key == null) {
+            throw new JOSEException("Signing algorithm " + algorithm + " is not enabled");
+        }
+        return key;
+    }
+
+    private static String await(Future<String> future) throws JOSEException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JOSEException("Interrupted while signing token", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JOSEException joseException) {
+                throw joseException;
+            }
+            throw new JOSEException("Failed to sign token: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public JWTClaimsSet verify(String token) {
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            SigningKey key = signingKeys.get(jwt.getHeader().getAlgorithm());
+            if (key == null || !key.jwk().getKeyID().equals(jwt.getHeader().getKeyID())) {
+                return null;
+            }
+            return jwt.verify(key.verifier()) ? jwt.getJWTClaimsSet() : null;
+        } catch (ParseException | JOSEException e) {
+            log.debug("Token verification failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public JWSAlgorithm resolveAlgorithm(String requested) throws JOSEException {
+        if (requested == null || requested.isBlank()) {
+            return defaultAlgorithm;
+        }
+        JWSAlgorithm algorithm = JWSAlgorithm.parse(requested.trim());
+        if (JWSAlgorithm.Ed25519.equals(algorithm)) {
+            algorithm = JWSAlgorithm.EdDSA;
+        }
+        return signingKey(algorithm).header().getAlgorithm();
+    }
+
+    @Override
+    public List<JWSAlgorithm> getSupportedAlgorithms() {
+        return List.copyOf(signingKeys.keySet());
+    }
+
+    @Override
+    public JWKSet getPublicJwkSet() {
+        return publicJwkSet;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        signingPool.shutdown();
+    }
+}
@@ -1,15 +1,17 @@
 package com.example.oidc.service;
 
 import com.example.oidc.dto.MobileIdCheckResponse;
-import com.example.oidc.dto.MobileIdSession;
 import com.example.oidc.dto.MobileIdStartResponse;
 import com.example.oidc.dto.PkceData;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
 import com.example.oidc.storage.OidcClient;
 import com.example.oidc.storage.OidcClientRegistry;
 import com.example.oidc.storage.IOidcSessionStore;
 import com.example.oidc.storage.UserInfo;
 import com.example.oidc.util.PersonalCodeHelper;
 import com.example.oidc.util.RandomCodeGenerator;
+import com.example.oidc.util.SingleFlight;
 import ee.sk.mid.MidAuthenticationHashToSign;
 import ee.sk.mid.MidAuthenticationIdentity;
 import ee.sk.mid.MidAuthenticationResponseValidator;
@@ -19,12 +21,19 @@ import ee.sk.mid.MidHashType;
 import ee.sk.mid.rest.dao.MidSessionStatus;
 import ee.sk.mid.MidAuthentication;
 import ee.sk.mid.rest.dao.request.MidAuthenticationRequest;
+import ee.sk.mid.rest.dao.request.MidSessionStatusRequest;
 import ee.sk.mid.rest.dao.response.MidAuthenticationResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 @Service
 public class MobileIdService implements IMobileIdService {
@@ -35,17 +44,28 @@ public class MobileIdService implements IMobileIdService {
     private final IOidcSessionStore oidcSessionStore;
     private final OidcClientRegistry clientRegistry;
     private final MidAuthenticationResponseValidator authenticationResponseValidator;
+    private final AuthSessionPoller authSessionPoller;
+    private final SingleFlight<List<String>, MobileIdCheckResponse> checks;
+
+    // How long Mobile-ID may hold a status request open waiting for the user (long poll)
+    @Value("${mid.client.status-timeout-millis:10000}")
+    private int statusTimeoutMillis;
 
     @Autowired
     public MobileIdService(
             MidClient midClient,
             IOidcSessionStore oidcSessionStore,
             OidcClientRegistry clientRegistry,
-            @Qualifier("midAuthenticationResponseValidator") MidAuthenticationResponseValidator authenticationResponseValidator) {
+            @Qualifier("midAuthenticationResponseValidator") MidAuthenticationResponseValidator authenticationResponseValidator,
+            AuthSessionPoller authSessionPoller,
+            MeterRegistry meterRegistry) {
         this.midClient = midClient;
         this.oidcSessionStore = oidcSessionStore;
         this.clientRegistry = clientRegistry;
         this.authenticationResponseValidator = authenticationResponseValidator;
+        this.authSessionPoller = authSessionPoller;
+        this.checks = new SingleFlight<>("mobileid.check", meterRegistry);
+        authSessionPoller.registerResumer(AuthMethod.MOBILE_ID, this::statusCheck);
     }
 
     @Override
@@ -89,8 +109,13 @@ public class MobileIdService implements IMobileIdService {
         String sessionId = response.getSessionID();
         log.info("Authentication session ID: " + sessionId);
 
-        MobileIdSession session = new MobileIdSession(false, personalCode, fullPhoneNumber,
-                authenticationHash.getHashInBase64());
+        AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+        session.setPersonalCode(personalCode);
+        session.setPhoneNumber(fullPhoneNumber);
+        session.setAuthenticationHash(authenticationHash.getHashInBase64());
+        session.setUpstreamSessionId(sessionId);
+        session.setClientId(clientId);
+        session.setRedirectUri(redirectUri);
 
         // Store PKCE data in session if provided
         if (codeChallenge != null && !codeChallenge.isEmpty()) {
@@ -99,108 +124,144 @@ public class MobileIdService implements IMobileIdService {
             session.setPkceData(pkceData);
         }
 
-        oidcSessionStore.storeMobileIdSession(sessionId, session);
+        CompletionStage<Void> sessionStored = oidcSessionStore.storeAuthSessionAsync(sessionId, session);
 
         MobileIdStartResponse responseBody = new MobileIdStartResponse();
         responseBody.sessionId = sessionId;
         responseBody.code = verificationCode;
+        // The browser polls with this session id right away
+        sessionStored.toCompletableFuture().join();
+        authSessionPoller.start(AuthMethod.MOBILE_ID, sessionId, statusCheck(sessionId, session));
         return responseBody;
     }
 
+    // Built from the stored session only, so any node can resume the login
+    private AuthSessionPoller.StatusCheck statusCheck(String sessionId, AuthSession session) {
+        String upstreamSessionId = session.getUpstreamSessionId();
+        String hashInBase64 = session.getAuthenticationHash();
+        String phoneNumber = session.getPhoneNumber();
+        if (upstreamSessionId == null || hashInBase64 == null) {
+            return null;
+        }
+        return () -> pollStatus(sessionId, upstreamSessionId, hashInBase64, phoneNumber);
+    }
+
     @Override
     public MobileIdCheckResponse checkMobileId(String sessionId, String clientId, String redirectUri,
             String responseType,
             String scope, String state, String nonce) {
-        MobileIdSession session = oidcSessionStore.getMobileIdSession(sessionId);
+        // Tabs and retries checking the same login at once share one check,
+        // so they get the same code instead of racing for it
+        return checks.execute(Arrays.asList(sessionId, clientId, redirectUri, responseType, scope, state, nonce),
+                () -> check(sessionId, clientId, redirectUri, state, nonce));
+    }
+
+    private MobileIdCheckResponse check(String sessionId, String clientId, String redirectUri, String state, String nonce) {
         MobileIdCheckResponse response = new MobileIdCheckResponse();
         response.sessionId = sessionId;
 
-        boolean complete = false;
         OidcClient client = clientRegistry.isValidClient(clientId, redirectUri);
-        boolean validClient = client != null;
-        boolean authorized = false;
-        String error = null;
-        MidAuthenticationResult authenticationResult = null;
-        MidAuthentication authentication = null;
-
-        if (!validClient) {
-            response.complete = complete;
+        if (client == null) {
+            response.complete = false;
             response.validClient = false;
-            response.authorized = authorized;
+            response.authorized = false;
             response.error = "Invalid client";
             return response;
         }
 
-        if (session != null) {
-            try {
-                MidSessionStatus sessionStatus = midClient.getSessionStatusPoller()
-                        .fetchFinalSessionStatus(sessionId, "/authentication/session/{sessionId}");
-
-                MidAuthenticationHashToSign authenticationHashToSign = MidAuthenticationHashToSign.newBuilder()
-                        .withHashType(MidHashType.SHA256)
-                        .withHashInBase64(session.getAuthenticationHash())
-                        .build();
-
-                authentication = midClient.createMobileIdAuthentication(sessionStatus,
-                        authenticationHashToSign);
-
-                // Use injected singleton validator
-                authenticationResult = authenticationResponseValidator.validate(authentication);
-
-                if (authenticationResult.isValid()) {
-                    complete = true;
-                    authorized = true;
-                } else {
-                    error = String.valueOf(authenticationResult.getErrors());
-                    log.error("MobileId authentication errors for sessionId {}: {}", sessionId,
-                            authenticationResult.getErrors());
-                }
-            } catch (Exception e) {
-                error = e.getMessage();
-                log.error("Error polling MobileId status for sessionId {}: {}", sessionId, e.getMessage());
-            }
-        } else {
-            error = "Session not found";
+        // The poller records the outcome; this only reads it, and takes the
+        // login over if the node polling it went away
+        AuthSession session = oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, sessionId);
+        authSessionPoller.resumeIfAbandoned(AuthMethod.MOBILE_ID, sessionId, session);
+        boolean authenticated = session != null && session.getState() == AuthSession.State.AUTHENTICATED;
+        response.complete = authenticated;
+        response.validClient = true;
+        response.authorized = authenticated;
+        if (session == null) {
+            response.error = "Session not found";
+        } else if (session.getState() == AuthSession.State.FAILED) {
+            response.error = session.getError();
         }
 
-        response.complete = complete;
-        response.validClient = validClient;
-        response.authorized = authorized;
-        if (error != null) {
-            response.error = error;
-        }
-
-        if (authorized && validClient && session != null && client != null && authenticationResult != null) {
-            MidAuthenticationIdentity identityUser = authenticationResult.getAuthenticationIdentity();
+        if (authenticated) {
             String code = RandomCodeGenerator.generateRandomCode();
-            UserInfo user = new UserInfo(
-                    identityUser.getIdentityCode(),
-                    identityUser.getGivenName(),
-                    identityUser.getSurName(),
-                    identityUser.getCountry(),
-                    PersonalCodeHelper.getDateOfBirth(identityUser.getIdentityCode()),
-                    session.getPhoneNumber(),
-                    nonce);
-
-            // Add base64-encoded certificate to userinfo
-            if (authentication.getCertificate() != null) {
-                try {
-                    String certBase64 = java.util.Base64.getEncoder()
-                            .encodeToString(authentication.getCertificate().getEncoded());
-                    user.setCert(certBase64);
-                } catch (Exception e) {
-                    log.error("Failed to encode certificate for sessionId {}: {}", sessionId, e.getMessage());
-                }
-            }
+            UserInfo user = session.getUser();
+            user.setNonce(nonce);
 
-            oidcSessionStore.storeCode(code, user, session.getPkceData());
+            CompletionStage<Boolean> codeStored = oidcSessionStore.finalizeSessionAsync(AuthMethod.MOBILE_ID,
+                    sessionId, code, user);
             StringBuilder redirectUrl = new StringBuilder()
                     .append(client.getRedirectUri(redirectUri)).append("?code=").append(code);
             if (state != null) {
                 redirectUrl.append("&state=").append(state);
             }
-            response.redirectUrl = redirectUrl.toString();
+            // The code must be redeemable once the client follows the redirect
+            if (codeStored.toCompletableFuture().join()) {
+                response.redirectUrl = redirectUrl.toString();
+            } else {
+                response.authorized = false;
+                response.error = "Session already completed or expired";
+            }
         }
         return response;
     }
-}
\ No newline at end of file
+
+    /**
+     * One status request for a login; records the outcome once Mobile-ID has
+     * one.
+     *
+     * @return whether the final state is recorded
+     */
+    boolean pollStatus(String sessionId, String upstreamSessionId, String hashInBase64, String phoneNumber) {
+        MidSessionStatus sessionStatus = midClient.getMobileIdConnector()
+                .getAuthenticationSessionStatus(new MidSessionStatusRequest(upstreamSessionId, statusTimeoutMillis));
+        if (!"COMPLETE".equalsIgnoreCase(sessionStatus.getState())) {
+            return false;
+        }
+        if (!"OK".equalsIgnoreCase(sessionStatus.getResult())) {
+            String error = "Mobile-ID authentication ended with " + sessionStatus.getResult();
+            log.info("MobileId authentication for sessionId {} ended with {}", sessionId, sessionStatus.getResult());
+            oidcSessionStore.updateAuthSessionState(sessionId, AuthSession.State.FAILED, error);
+            return true;
+        }
+
+        MidAuthenticationHashToSign authenticationHashToSign = MidAuthenticationHashToSign.newBuilder()
+                .withHashType(MidHashType.SHA256)
+                .withHashInBase64(hashInBase64)
+                .build();
+        MidAuthentication authentication = midClient.createMobileIdAuthentication(sessionStatus,
+                authenticationHashToSign);
+        // Use injected singleton validator
+        MidAuthenticationResult authenticationResult = authenticationResponseValidator.validate(authentication);
+        if (!authenticationResult.isValid()) {
+            String error = String.valueOf(authenticationResult.getErrors());
+            log.error("MobileId authentication errors for sessionId {}: {}", sessionId,
+                    authenticationResult.getErrors());
+            oidcSessionStore.updateAuthSessionState(sessionId, AuthSession.State.FAILED, error);
+            return true;
+        }
+
+        MidAuthenticationIdentity identityUser = authenticationResult.getAuthenticationIdentity();
+        UserInfo user = new UserInfo(
+                identityUser.getIdentityCode(),
+                identityUser.getGivenName(),
+                identityUser.getSurName(),
+                identityUser.getCountry(),
+                PersonalCodeHelper.getDateOfBirth(identityUser.getIdentityCode()),
+                phoneNumber,
+                null);
+
+        // Add base64-encoded certificate to userinfo
+        if (authentication.getCertificate() != null) {
+            try {
+                String certBase64 = java.util.Base64.getEncoder()
+                        .encodeToString(authentication.getCertificate().getEncoded());
+                user.setCert(certBase64);
+            } catch (Exception e) {
+                log.error("Failed to encode certificate for sessionId {}: {}", sessionId, e.getMessage());
+            }
+        }
+        oidcSessionStore.storeAuthenticatedUser(sessionId, user);
+        return true;
+    }
+}
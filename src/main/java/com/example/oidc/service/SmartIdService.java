@@ -1,9 +1,10 @@
 package com.example.oidc.service;
 
 import com.example.oidc.dto.SmartIdCheckResponse;
-import com.example.oidc.dto.SmartIdSession;
 import com.example.oidc.dto.SmartIdStartResponse;
 import com.example.oidc.dto.PkceData;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
 import com.example.oidc.storage.OidcClient;
 import com.example.oidc.storage.OidcClientRegistry;
 import com.example.oidc.storage.IOidcSessionStore;
@@ -11,29 +12,45 @@ import com.example.oidc.storage.UserInfo;
 
 import ee.sk.smartid.AuthenticationHash;
 import ee.sk.smartid.AuthenticationIdentity;
+import ee.sk.smartid.AuthenticationRequestBuilder;
 import ee.sk.smartid.AuthenticationResponseValidator;
 import ee.sk.smartid.HashType;
 import ee.sk.smartid.SmartIdClient;
 import ee.sk.smartid.SmartIdAuthenticationResponse;
+import ee.sk.smartid.exception.UnprocessableSmartIdResponseException;
+import ee.sk.smartid.exception.UserAccountException;
+import ee.sk.smartid.exception.UserActionException;
+import ee.sk.smartid.rest.dao.SessionStatus;
 import ee.sk.smartid.rest.dao.SemanticsIdentifier;
 import ee.sk.smartid.rest.dao.Interaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 import com.example.oidc.util.RandomCodeGenerator;
+import com.example.oidc.util.SingleFlight;
 
 @Service
 public class SmartIdService implements ISmartIdService {
 
+    private static final Logger log = LoggerFactory.getLogger(SmartIdService.class);
+
     private final IOidcSessionStore oidcSessionStore;
     private final OidcClientRegistry clientRegistry;
     private final SmartIdClient smartIdClient;
     private final AuthenticationResponseValidator authenticationResponseValidator;
+    private final AuthSessionPoller authSessionPoller;
+    private final SingleFlight<List<String>, SmartIdCheckResponse> checks;
 
     @Value("${smartid.client.allowed-interaction-text:Log in to self-service?}")
     private String allowedInteractionText;
@@ -46,11 +63,16 @@ public class SmartIdService implements ISmartIdService {
             IOidcSessionStore oidcSessionStore,
             OidcClientRegistry clientRegistry,
             SmartIdClient smartIdClient,
-            @Qualifier("authenticationResponseValidator") AuthenticationResponseValidator authenticationResponseValidator) {
+            @Qualifier("authenticationResponseValidator") AuthenticationResponseValidator authenticationResponseValidator,
+            AuthSessionPoller authSessionPoller,
+            MeterRegistry meterRegistry) {
         this.oidcSessionStore = oidcSessionStore;
         this.clientRegistry = clientRegistry;
         this.smartIdClient = smartIdClient;
         this.authenticationResponseValidator = authenticationResponseValidator;
+        this.authSessionPoller = authSessionPoller;
+        this.checks = new SingleFlight<>("smartid.check", meterRegistry);
+        authSessionPoller.registerResumer(AuthMethod.SMART_ID, this::statusCheck);
     }
 
     @Override
@@ -64,7 +86,13 @@ public class SmartIdService implements ISmartIdService {
 
         String sessionId = RandomCodeGenerator.generateRandomCode();
 
-        SmartIdSession session = new SmartIdSession(false, country, personalCode, authenticationHash.getHashInBase64());
+        AuthSession session = new AuthSession(AuthMethod.SMART_ID);
+        session.setCountry(country);
+        session.setPersonalCode(personalCode);
+        session.setAuthenticationHash(authenticationHash.getHashInBase64());
+        session.setHashType(authenticationHash.getHashType().name());
+        session.setCertificateLevel(certificateLevel);
+        session.setInteractionText(allowedInteractionText);
 
         // Store PKCE data in session if provided
         if (codeChallenge != null && !codeChallenge.isEmpty()) {
@@ -73,19 +101,86 @@ public class SmartIdService implements ISmartIdService {
             session.setPkceData(pkceData);
         }
 
-        oidcSessionStore.storeSmartIdSession(sessionId, session);
+        // Open the session at Smart-ID now; the poller follows it from here
+        try {
+            session.setUpstreamSessionId(authenticationRequest(session).initiateAuthentication());
+        } catch (Exception e) {
+            // Reported by the first status check, like any other failed login
+            log.error("Failed to start Smart-ID authentication for sessionId {}: {}", sessionId, e.getMessage());
+            session.setState(AuthSession.State.FAILED);
+            session.setError(e.getMessage());
+        }
+
+        CompletionStage<Void> sessionStored = oidcSessionStore.storeAuthSessionAsync(sessionId, session);
 
         SmartIdStartResponse responseBody = new SmartIdStartResponse();
         responseBody.sessionId = sessionId;
         responseBody.code = verificationCode;
         responseBody.country = country;
+        // The browser polls with this session id right away
+        sessionStored.toCompletableFuture().join();
+        if (session.getUpstreamSessionId() != null) {
+            authSessionPoller.start(AuthMethod.SMART_ID, sessionId, statusCheck(sessionId, session));
+        }
         return responseBody;
     }
 
+    /**
+     * The authentication request of a login, built from its session alone, so
+     * any node can verify the response once the user has answered. Sessions
+     * stored before the request was kept in them get the request as started
+     * then: a SHA-512 hash and the configured level and text.
+     */
+    private AuthenticationRequestBuilder authenticationRequest(AuthSession session) {
+        AuthenticationHash authenticationHash = new AuthenticationHash();
+        authenticationHash.setHashInBase64(session.getAuthenticationHash());
+        authenticationHash.setHashType(session.getHashType() != null
+                ? HashType.valueOf(session.getHashType())
+                : HashType.SHA512);
+        String interactionText = session.getInteractionText() != null
+                ? session.getInteractionText()
+                : allowedInteractionText;
+        SemanticsIdentifier semanticsIdentifier = new SemanticsIdentifier(
+                SemanticsIdentifier.IdentityType.PNO,
+                SemanticsIdentifier.CountryCode.valueOf(countryCode(session.getCountry())),
+                session.getPersonalCode());
+        return smartIdClient
+                .createAuthentication()
+                .withSemanticsIdentifier(semanticsIdentifier)
+                .withAuthenticationHash(authenticationHash)
+                .withCertificateLevel(session.getCertificateLevel() != null
+                        ? session.getCertificateLevel()
+                        : certificateLevel)
+                .withAllowedInteractionsOrder(
+                        Collections.singletonList(Interaction.displayTextAndPIN(interactionText)))
+                .withShareMdClientIpAddress(true);
+    }
+
+    private AuthSessionPoller.StatusCheck statusCheck(String sessionId, AuthSession session) {
+        String upstreamSessionId = session.getUpstreamSessionId();
+        if (upstreamSessionId == null || session.getAuthenticationHash() == null) {
+            return null;
+        }
+        AuthenticationRequestBuilder request = authenticationRequest(session);
+        String personalCode = session.getPersonalCode();
+        String country = session.getCountry();
+        return () -> pollStatus(sessionId, upstreamSessionId, request, personalCode, country);
+    }
+
     @Override
     public SmartIdCheckResponse checkSmartId(String sessionId, String clientId, String redirectUri, String responseType,
             String scope, String state, String nonce) {
-        SmartIdSession session = oidcSessionStore.getSmartIdSession(sessionId);
+        // Tabs and retries checking the same login at once share one check,
+        // so they get the same code instead of racing for it
+        return checks.execute(Arrays.asList(sessionId, clientId, redirectUri, responseType, scope, state, nonce),
+                () -> check(sessionId, clientId, redirectUri, state, nonce));
+    }
+
+    private SmartIdCheckResponse check(String sessionId, String clientId, String redirectUri, String state, String nonce) {
+        // The poller records the outcome; this only reads it, and takes the
+        // login over if the node polling it went away
+        AuthSession session = oidcSessionStore.getAuthSession(AuthMethod.SMART_ID, sessionId);
+        authSessionPoller.resumeIfAbandoned(AuthMethod.SMART_ID, sessionId, session);
         SmartIdCheckResponse response = new SmartIdCheckResponse();
         response.sessionId = sessionId;
 
@@ -97,95 +192,101 @@ public class SmartIdService implements ISmartIdService {
             return response;
         }
 
-        boolean complete = false;
         boolean validClient = clientId != null && clientRegistry.isValidClient(clientId, redirectUri) != null;
-        boolean authorized = false;
-        OidcClient client = null;
-        AuthenticationIdentity authIdentity = null;
-
-        try {
-            // Map country names to ISO codes
-            String countryCode;
-            switch (session.getCountry().toLowerCase()) {
-                case "estonia":
-                    countryCode = "EE";
-                    break;
-                case "latvia":
-                    countryCode = "LV";
-                    break;
-                case "lithuania":
-                    countryCode = "LT";
-                    break;
-                default:
-                    countryCode = session.getCountry().toUpperCase();
-            }
-
-            SemanticsIdentifier semanticsIdentifier = new SemanticsIdentifier(
-                    SemanticsIdentifier.IdentityType.PNO,
-                    SemanticsIdentifier.CountryCode.valueOf(countryCode),
-                    session.getPersonalCode());
-
-            AuthenticationHash authenticationHash = new AuthenticationHash();
-            authenticationHash.setHashInBase64(session.getAuthenticationHash());
-            authenticationHash.setHashType(HashType.SHA512);
-
-            SmartIdAuthenticationResponse smartIdresponse = smartIdClient
-                    .createAuthentication()
-                    .withSemanticsIdentifier(semanticsIdentifier)
-                    .withAuthenticationHash(authenticationHash)
-                    .withCertificateLevel(certificateLevel)
-                    .withAllowedInteractionsOrder(
-                            Collections.singletonList(Interaction.displayTextAndPIN(allowedInteractionText)))
-                    .withShareMdClientIpAddress(true)
-                    .authenticate();
+        boolean authorized = session.getState() == AuthSession.State.AUTHENTICATED;
+        response.complete = authorized;
+        response.validClient = validClient;
+        response.authorized = authorized;
+        if (session.getState() == AuthSession.State.FAILED) {
+            response.validClient = false;
+            response.error = session.getError();
+            return response;
+        }
 
-            // Use injected singleton validator
-            authIdentity = authenticationResponseValidator.validate(smartIdresponse);
+        if (authorized && validClient) {
+            OidcClient client = clientRegistry.getClient(clientId);
+            if (client != null) {
+                String code = RandomCodeGenerator.generateRandomCode();
+                UserInfo user = session.getUser();
+                user.setNonce(nonce);
 
-            complete = authIdentity != null && authIdentity.getAuthCertificate() != null;
-            validClient = clientId != null && clientRegistry.isValidClient(clientId, redirectUri) != null;
-            authorized = complete;
-
-            response.complete = complete;
-            response.validClient = validClient;
-            response.authorized = authorized;
-
-            if (authorized && validClient && session != null) {
-                client = clientRegistry.getClient(clientId);
-                if (client != null) {
-                    String code = RandomCodeGenerator.generateRandomCode();
-                    UserInfo user = new UserInfo(
-                            session.getPersonalCode(),
-                            authIdentity.getGivenName(),
-                            authIdentity.getSurname(),
-                            session.getCountry(),
-                            authIdentity.getDateOfBirth().get(),
-                            null,
-                            nonce);
-
-                    String base64 = getCertificateBase64(authIdentity.getAuthCertificate());
-                    user.setCert(base64); // set base64 certificate
-
-                    oidcSessionStore.storeCode(code, user, session.getPkceData());
-                    StringBuilder redirectUrl = new StringBuilder();
-                    redirectUrl.append(client.getRedirectUri(redirectUri)).append("?code=").append(code);
-                    if (state != null) {
-                        redirectUrl.append("&state=").append(state);
-                    }
+                CompletionStage<Boolean> codeStored = oidcSessionStore.finalizeSessionAsync(AuthMethod.SMART_ID,
+                        sessionId, code, user);
+                StringBuilder redirectUrl = new StringBuilder();
+                redirectUrl.append(client.getRedirectUri(redirectUri)).append("?code=").append(code);
+                if (state != null) {
+                    redirectUrl.append("&state=").append(state);
+                }
+                // The code must be redeemable once the client follows the redirect
+                if (codeStored.toCompletableFuture().join()) {
                     response.redirectUrl = redirectUrl.toString();
+                } else {
+                    response.authorized = false;
+                    response.error = "Session already completed or expired";
                 }
             }
-        } catch (Exception e) {
-            response.complete = false;
-            response.validClient = false;
-            response.authorized = false;
-            response.error = e.getMessage();
-            return response;
         }
 
         return response;
     }
 
+    /**
+     * One status request for a login; records the outcome once Smart-ID has
+     * one.
+     *
+     * @return whether the final state is recorded
+     */
+    boolean pollStatus(String sessionId, String upstreamSessionId, AuthenticationRequestBuilder request,
+            String personalCode, String country) {
+        SessionStatus sessionStatus = smartIdClient.getSmartIdConnector().getSessionStatus(upstreamSessionId);
+        if (!"COMPLETE".equalsIgnoreCase(sessionStatus.getState())) {
+            return false;
+        }
+
+        AuthenticationIdentity authIdentity;
+        try {
+            SmartIdAuthenticationResponse smartIdresponse = request.createSmartIdAuthenticationResponse(sessionStatus);
+            // Use injected singleton validator
+            authIdentity = authenticationResponseValidator.validate(smartIdresponse);
+        } catch (UserActionException | UserAccountException | UnprocessableSmartIdResponseException e) {
+            // Refused, timed out or not acceptable: final
+            log.info("Smart-ID authentication for sessionId {} failed: {}", sessionId, e.getMessage());
+            oidcSessionStore.updateAuthSessionState(sessionId, AuthSession.State.FAILED, e.getMessage());
+            return true;
+        }
+        if (authIdentity == null || authIdentity.getAuthCertificate() == null) {
+            oidcSessionStore.updateAuthSessionState(sessionId, AuthSession.State.FAILED,
+                    "Smart-ID returned no authentication certificate");
+            return true;
+        }
+
+        UserInfo user = new UserInfo(
+                personalCode,
+                authIdentity.getGivenName(),
+                authIdentity.getSurname(),
+                country,
+                authIdentity.getDateOfBirth().orElse(null),
+                null,
+                null);
+        user.setCert(getCertificateBase64(authIdentity.getAuthCertificate())); // set base64 certificate
+        oidcSessionStore.storeAuthenticatedUser(sessionId, user);
+        return true;
+    }
+
+    // Maps country names to ISO codes
+    private static String countryCode(String country) {
+        switch (country.toLowerCase()) {
+            case "estonia":
+                return "EE";
+            case "latvia":
+                return "LV";
+            case "lithuania":
+                return "LT";
+            default:
+                return country.toUpperCase();
+        }
+    }
+
     public static String getCertificateBase64(X509Certificate identity) {
         if (identity == null) {
             return null;
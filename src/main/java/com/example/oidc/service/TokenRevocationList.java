@@ -0,0 +1,54 @@
+package com.example.oidc.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local list of revoked stateless access tokens, keyed by jti. Entries
+ * are dropped once the token would have expired anyway, so the list only
+ * holds tokens revoked within the last access token lifetime.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    // jti -> token expiry (epoch millis)
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public TokenRevocationList(@Value("${oidc.access-token.revocation-list-size:10000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public void revoke(String jti, long expiresAtMillis) {
+        if (revoked.size() >= maxEntries) {
+            purgeExpired();
+            if (revoked.size() >= maxEntries) {
+                log.warn("Token revocation list holds {} entries (limit {})", revoked.size(), maxEntries);
+            }
+        }
+        revoked.put(jti, expiresAtMillis);
+    }
+
+    public boolean isRevoked(String jti) {
+        Long expiresAt = revoked.get(jti);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            revoked.remove(jti, expiresAt);
+        }
+        return true;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt < now);
+    }
+}
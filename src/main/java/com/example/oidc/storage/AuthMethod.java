@@ -0,0 +1,10 @@
+package com.example.oidc.storage;
+
+/**
+ * Authentication methods with a pending session in the session store.
+ */
+public enum AuthMethod {
+    MOBILE_ID,
+    SMART_ID,
+    ID_CARD
+}
@@ -0,0 +1,349 @@
+package com.example.oidc.storage;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.example.oidc.dto.PkceData;
+
+/**
+ * A login in progress, for every authentication method: from the start
+ * request until the authorization code is issued, which deletes it.
+ * <p>
+ * Stored as a Redis hash with one field per non-null property, so a session
+ * only carries what its method needs and single fields (such as the state)
+ * can be changed without rewriting the rest.
+ */
+public class AuthSession {
+
+    /**
+     * Where the login stands. A finished login has no state: its session is
+     * deleted when the code is issued.
+     */
+    public enum State {
+        /** Started; the upstream hasn't reported on it yet. */
+        PENDING,
+        /** The upstream is waiting for the user to confirm. */
+        RUNNING,
+        /**
+         * The upstream confirmed the user, see {@link #getUser()}; the next
+         * status check issues the authorization code.
+         */
+        AUTHENTICATED,
+        /** The upstream rejected the authentication; see {@link #getError()}. */
+        FAILED
+    }
+
+    static final String METHOD = "method";
+    static final String STATE = "state";
+    static final String ERROR = "error";
+    static final String CODE_CHALLENGE = "code_challenge";
+    static final String CODE_CHALLENGE_METHOD = "code_challenge_method";
+    static final String CLIENT_ID = "client_id";
+    static final String REDIRECT_URI = "redirect_uri";
+    static final String OIDC_STATE = "oidc_state";
+    static final String NONCE = "nonce";
+    static final String UPSTREAM_SESSION_ID = "upstream_session_id";
+    static final String PERSONAL_CODE = "personal_code";
+    static final String PHONE_NUMBER = "phone_number";
+    static final String COUNTRY = "country";
+    static final String AUTHENTICATION_HASH = "authentication_hash";
+    static final String HASH_TYPE = "hash_type";
+    static final String CERTIFICATE_LEVEL = "certificate_level";
+    static final String INTERACTION_TEXT = "interaction_text";
+    static final String CHALLENGE_NONCE = "challenge_nonce";
+    static final String POLLED_UNTIL = "polled_until";
+    static final String USER_SUB = "user_sub";
+    static final String USER_GIVEN_NAME = "user_given_name";
+    static final String USER_SURNAME = "user_surname";
+    static final String USER_COUNTRY = "user_country";
+    static final String USER_DATE_OF_BIRTH = "user_date_of_birth";
+    static final String USER_PHONE_NUMBER = "user_phone_number";
+    static final String USER_CERT = "user_cert";
+
+    private AuthMethod method;
+    private State state = State.PENDING;
+    private String error;
+    private PkceData pkceData; // null if PKCE was not used
+    private String clientId;
+    private String redirectUri;
+    private String oidcState;
+    private String nonce;
+    // Session id at the Mobile-ID / Smart-ID service
+    private String upstreamSessionId;
+    private String personalCode;
+    private String phoneNumber;
+    private String country;
+    // Base64 hash the user signs (Mobile-ID, Smart-ID)
+    private String authenticationHash;
+    // Rest of the authentication request, to verify the response (Smart-ID)
+    private String hashType;
+    private String certificateLevel;
+    private String interactionText;
+    // Web eID challenge (ID-card)
+    private String challengeNonce;
+    // Epoch millis until which a node polls the upstream for this login (lease);
+    // once passed, any node may take over (Mobile-ID, Smart-ID)
+    private Long polledUntil;
+    // The authenticated user, without nonce (AUTHENTICATED)
+    private UserInfo user;
+
+    public AuthSession() {
+        // Default constructor
+    }
+
+    public AuthSession(AuthMethod method) {
+        this.method = method;
+    }
+
+    /**
+     * The hash fields of this session; null properties are left out.
+     */
+    Map<String, String> toFields() {
+        Map<String, String> fields = new HashMap<>();
+        put(fields, METHOD, method != null ? method.name() : null);
+        put(fields, STATE, state != null ? state.name() : null);
+        put(fields, ERROR, error);
+        if (pkceData != null) {
+            put(fields, CODE_CHALLENGE, pkceData.getCodeChallenge());
+            put(fields, CODE_CHALLENGE_METHOD, pkceData.getCodeChallengeMethod());
+        }
+        put(fields, CLIENT_ID, clientId);
+        put(fields, REDIRECT_URI, redirectUri);
+        put(fields, OIDC_STATE, oidcState);
+        put(fields, NONCE, nonce);
+        put(fields, UPSTREAM_SESSION_ID, upstreamSessionId);
+        put(fields, PERSONAL_CODE, personalCode);
+        put(fields, PHONE_NUMBER, phoneNumber);
+        put(fields, COUNTRY, country);
+        put(fields, AUTHENTICATION_HASH, authenticationHash);
+        put(fields, HASH_TYPE, hashType);
+        put(fields, CERTIFICATE_LEVEL, certificateLevel);
+        put(fields, INTERACTION_TEXT, interactionText);
+        put(fields, CHALLENGE_NONCE, challengeNonce);
+        put(fields, POLLED_UNTIL, polledUntil != null ? polledUntil.toString() : null);
+        if (user != null) {
+            fields.putAll(userFields(user));
+        }
+        return fields;
+    }
+
+    /**
+     * The hash fields holding an authenticated user; the nonce is left out, it
+     * belongs to the request that issues the code.
+     */
+    static Map<String, String> userFields(UserInfo user) {
+        Map<String, String> fields = new HashMap<>();
+        put(fields, USER_SUB, user.getSub());
+        put(fields, USER_GIVEN_NAME, user.getGivenName());
+        put(fields, USER_SURNAME, user.getSurname());
+        put(fields, USER_COUNTRY, user.getCountry());
+        put(fields, USER_DATE_OF_BIRTH, user.getDateOfBirth() != null ? user.getDateOfBirth().toString() : null);
+        put(fields, USER_PHONE_NUMBER, user.getPhoneNumber());
+        put(fields, USER_CERT, user.getCert());
+        return fields;
+    }
+
+    /**
+     * Reads a session from its hash fields.
+     *
+     * @param fields the hash fields, or null
+     * @return the session, or null if there are no fields
+     */
+    static AuthSession fromFields(Map<String, String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        AuthSession session = new AuthSession();
+        String method = fields.get(METHOD);
+        session.method = method != null ? AuthMethod.valueOf(method) : null;
+        String state = fields.get(STATE);
+        session.state = state != null ? State.valueOf(state) : State.PENDING;
+        session.error = fields.get(ERROR);
+        String codeChallenge = fields.get(CODE_CHALLENGE);
+        if (codeChallenge != null) {
+            session.pkceData = new PkceData(codeChallenge, fields.getOrDefault(CODE_CHALLENGE_METHOD, "plain"));
+        }
+        session.clientId = fields.get(CLIENT_ID);
+        session.redirectUri = fields.get(REDIRECT_URI);
+        session.oidcState = fields.get(OIDC_STATE);
+        session.nonce = fields.get(NONCE);
+        session.upstreamSessionId = fields.get(UPSTREAM_SESSION_ID);
+        session.personalCode = fields.get(PERSONAL_CODE);
+        session.phoneNumber = fields.get(PHONE_NUMBER);
+        session.country = fields.get(COUNTRY);
+        session.authenticationHash = fields.get(AUTHENTICATION_HASH);
+        session.hashType = fields.get(HASH_TYPE);
+        session.certificateLevel = fields.get(CERTIFICATE_LEVEL);
+        session.interactionText = fields.get(INTERACTION_TEXT);
+        session.challengeNonce = fields.get(CHALLENGE_NONCE);
+        String polledUntil = fields.get(POLLED_UNTIL);
+        session.polledUntil = polledUntil != null ? Long.valueOf(polledUntil) : null;
+        if (fields.containsKey(USER_SUB)) {
+            String dateOfBirth = fields.get(USER_DATE_OF_BIRTH);
+            session.user = new UserInfo(fields.get(USER_SUB), fields.get(USER_GIVEN_NAME), fields.get(USER_SURNAME),
+                    fields.get(USER_COUNTRY), dateOfBirth != null ? LocalDate.parse(dateOfBirth) : null,
+                    fields.get(USER_PHONE_NUMBER), null);
+            session.user.setCert(fields.get(USER_CERT));
+        }
+        return session;
+    }
+
+    private static void put(Map<String, String> fields, String field, String value) {
+        if (value != null) {
+            fields.put(field, value);
+        }
+    }
+
+    public AuthMethod getMethod() {
+        return method;
+    }
+
+    public void setMethod(AuthMethod method) {
+        this.method = method;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public PkceData getPkceData() {
+        return pkceData;
+    }
+
+    public void setPkceData(PkceData pkceData) {
+        this.pkceData = pkceData;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public String getRedirectUri() {
+        return redirectUri;
+    }
+
+    public void setRedirectUri(String redirectUri) {
+        this.redirectUri = redirectUri;
+    }
+
+    public String getOidcState() {
+        return oidcState;
+    }
+
+    public void setOidcState(String oidcState) {
+        this.oidcState = oidcState;
+    }
+
+    public String getNonce() {
+        return nonce;
+    }
+
+    public void setNonce(String nonce) {
+        this.nonce = nonce;
+    }
+
+    public String getUpstreamSessionId() {
+        return upstreamSessionId;
+    }
+
+    public void setUpstreamSessionId(String upstreamSessionId) {
+        this.upstreamSessionId = upstreamSessionId;
+    }
+
+    public String getPersonalCode() {
+        return personalCode;
+    }
+
+    public void setPersonalCode(String personalCode) {
+        this.personalCode = personalCode;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public String getAuthenticationHash() {
+        return authenticationHash;
+    }
+
+    public void setAuthenticationHash(String authenticationHash) {
+        this.authenticationHash = authenticationHash;
+    }
+
+    public String getHashType() {
+        return hashType;
+    }
+
+    public void setHashType(String hashType) {
+        this.hashType = hashType;
+    }
+
+    public String getCertificateLevel() {
+        return certificateLevel;
+    }
+
+    public void setCertificateLevel(String certificateLevel) {
+        this.certificateLevel = certificateLevel;
+    }
+
+    public String getInteractionText() {
+        return interactionText;
+    }
+
+    public void setInteractionText(String interactionText) {
+        this.interactionText = interactionText;
+    }
+
+    public String getChallengeNonce() {
+        return challengeNonce;
+    }
+
+    public void setChallengeNonce(String challengeNonce) {
+        this.challengeNonce = challengeNonce;
+    }
+
+    public Long getPolledUntil() {
+        return polledUntil;
+    }
+
+    public void setPolledUntil(Long polledUntil) {
+        this.polledUntil = polledUntil;
+    }
+
+    public UserInfo getUser() {
+        return user;
+    }
+
+    public void setUser(UserInfo user) {
+        this.user = user;
+    }
+}
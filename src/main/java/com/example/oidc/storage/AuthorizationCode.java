@@ -0,0 +1,39 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.dto.PkceData;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Everything /token needs to redeem an authorization code, stored as one
+ * record so it can be written and consumed in a single Redis command.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AuthorizationCode {
+    private UserInfo user;
+    private PkceData pkceData; // null if PKCE was not used
+
+    public AuthorizationCode() {
+        // Default constructor
+    }
+
+    public AuthorizationCode(UserInfo user, PkceData pkceData) {
+        this.user = user;
+        this.pkceData = pkceData;
+    }
+
+    public UserInfo getUser() {
+        return user;
+    }
+
+    public void setUser(UserInfo user) {
+        this.user = user;
+    }
+
+    public PkceData getPkceData() {
+        return pkceData;
+    }
+
+    public void setPkceData(PkceData pkceData) {
+        this.pkceData = pkceData;
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.oidc.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.support.caching.CacheAccessor;
+import io.lettuce.core.support.caching.CacheFrontend;
+import io.lettuce.core.support.caching.ClientSideCaching;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Server-assisted client-side cache (RESP3 CLIENT TRACKING) for keys that are
+ * read far more often than written, by default the authentication sessions
+ * that every status poll reads.
+ * <p>
+ * Values are read through a dedicated connection with tracking enabled, so
+ * Redis remembers which keys this node holds and pushes an invalidation when
+ * any node changes, deletes or expires one of them. Writes made by this node
+ * also drop the local entry straight away. Invalidations can be lost while the
+ * tracking connection is down, so entries also expire after
+ * oidc.storage.tracking.max-ttl-seconds. Needs a standalone or Sentinel setup;
+ * Redis Cluster is not supported.
+ */
+@Component
+@ConditionalOnExpression("${oidc.storage.tracking.enabled:false} and '${oidc.storage.backend:redis}' == 'redis'")
+public class ClientTrackingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientTrackingCache.class);
+    private static final RedisCodec<String, byte[]> CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final List<String> prefixes;
+    private final Cache<String, byte[]> cache;
+    // Hashes are read with HGETALL on the tracking connection and kept here;
+    // the same invalidations drop them
+    private final Cache<String, Map<String, String>> hashes;
+    // Hash reads in flight, by key. An invalidation removes the key, so a read
+    // it raced with is returned but not cached
+    private final Map<String, Object> pendingReads = new ConcurrentHashMap<>();
+    private final Counter invalidations;
+    private volatile StatefulRedisConnection<String, byte[]> connection;
+    private volatile CacheFrontend<String, byte[]> frontend;
+
+    public ClientTrackingCache(LettuceConnectionFactory connectionFactory,
+            @Value("${oidc.storage.tracking.prefixes:auth:session:}") String prefixes,
+            @Value("${oidc.storage.tracking.max-size:10000}") long maxSize,
+            @Value("${oidc.storage.tracking.max-ttl-seconds:30}") long maxTtlSeconds,
+            MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.prefixes = Arrays.stream(prefixes.split(","))
+                .map(String::trim)
+                .filter(prefix -> !prefix.isEmpty())
+                .toList();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.hashes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "oidc.storage.tracking");
+        CaffeineCacheMetrics.monitor(meterRegistry, hashes, "oidc.storage.tracking.hashes");
+        Gauge.builder("oidc.storage.tracking.hit.ratio", this, ClientTrackingCache::hitRate)
+                .description("Share of tracked reads served without a Redis round trip")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("oidc.storage.tracking.invalidations")
+                .description("Entries dropped because Redis reported the key changed")
+                .register(meterRegistry);
+        logger.info("Client-side tracking cache enabled for {}", this.prefixes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (frontend != null) {
+            frontend.close();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Returns whether reads of this key go through the cache.
+     */
+    public boolean covers(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a key, from the local cache if Redis hasn't invalidated it.
+     *
+     * @param key the key to read
+     * @return the raw value or null if not found
+     */
+    public byte[] get(String key) {
+        return frontend().get(key);
+    }
+
+    /**
+     * Reads a hash, from the local cache if Redis hasn't invalidated it.
+     *
+     * @param key the key of the hash
+     * @return the fields, or null if not found
+     */
+    public Map<String, String> getHash(String key) {
+        Map<String, String> cached = hashes.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        frontend();
+        Object read = new Object();
+        pendingReads.put(key, read);
+        Map<String, byte[]> reply;
+        try {
+            // Read on the tracking connection, so Redis reports when the hash changes
+            reply = connection.sync().hgetall(key);
+        } catch (RuntimeException e) {
+            pendingReads.remove(key, read);
+            throw e;
+        }
+        if (reply == null || reply.isEmpty()) {
+            pendingReads.remove(key, read);
+            return null;
+        }
+        Map<String, String> fields = new HashMap<>(reply.size() * 2);
+        reply.forEach((field, value) -> fields.put(field, new String(value, StandardCharsets.UTF_8)));
+        Map<String, String> snapshot = Map.copyOf(fields);
+        // Cached only if no invalidation arrived since the read was sent; done
+        // under the key's lock, so an invalidation either prevents the put or
+        // drops the entry after it
+        pendingReads.computeIfPresent(key, (k, current) -> {
+            if (current == read) {
+                hashes.put(k, snapshot);
+            }
+            return current == read ? null : current;
+        });
+        return snapshot;
+    }
+
+    /**
+     * Drops a key this node is writing, without waiting for the server's
+     * invalidation.
+     *
+     * @param key the key being written
+     */
+    public void evict(String key) {
+        cache.invalidate(key);
+        pendingReads.remove(key);
+        hashes.invalidate(key);
+    }
+
+    private double hitRate() {
+        long hits = cache.stats().hitCount() + hashes.stats().hitCount();
+        long requests = cache.stats().requestCount() + hashes.stats().requestCount();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    // Connects on first use, so the application starts while Redis is down
+    private CacheFrontend<String, byte[]> frontend() {
+        CacheFrontend<String, byte[]> current = frontend;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (frontend == null) {
+                AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+                if (!(client instanceof io.lettuce.core.RedisClient standalone)) {
+                    throw new IllegalStateException("Client tracking needs a standalone or Sentinel Redis setup");
+                }
+                connection = standalone.connect(CODEC);
+                frontend = ClientSideCaching.enable(new TrackedAccessor(), connection, TrackingArgs.Builder.enabled());
+                logger.info("Opened Redis connection with client tracking");
+            }
+            return frontend;
+        }
+    }
+
+    private class TrackedAccessor implements CacheAccessor<String, byte[]> {
+        @Override
+        public byte[] get(String key) {
+            return cache.getIfPresent(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            cache.put(key, value);
+        }
+
+        @Override
+        public void evict(String key) {
+            invalidations.increment();
+            if (key == null) {
+                // FLUSHDB/FLUSHALL
+                cache.invalidateAll();
+                pendingReads.clear();
+                hashes.invalidateAll();
+            } else {
+                cache.invalidate(key);
+                pendingReads.remove(key);
+                hashes.invalidate(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.oidc.storage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link IAsyncRedisClient} for the node-local backends (memory, mmap). Their
+ * operations finish in microseconds without I/O waits, so they run on the
+ * calling thread and return completed stages instead of paying for a thread
+ * hand-off.
+ */
+@Component
+@ConditionalOnExpression("'${oidc.storage.backend:redis}' == 'memory' or '${oidc.storage.backend:redis}' == 'mmap'")
+public class DirectAsyncRedisClient implements IAsyncRedisClient {
+
+    private final IRedisClient redisClient;
+
+    public DirectAsyncRedisClient(IRedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    @Override
+    public CompletionStage<Void> setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        return run(() -> redisClient.setValue(key, value, expiration, timeUnit));
+    }
+
+    @Override
+    public CompletionStage<String> getValue(String key) {
+        return supply(() -> redisClient.getValue(key));
+    }
+
+    @Override
+    public CompletionStage<String> getAndDelete(String key) {
+        return supply(() -> redisClient.getAndDelete(key));
+    }
+
+    @Override
+    public CompletionStage<Void> delete(String key) {
+        return run(() -> redisClient.delete(key));
+    }
+
+    @Override
+    public <T> CompletionStage<Void> setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        return run(() -> redisClient.setObject(key, value, expiration, timeUnit));
+    }
+
+    @Override
+    public <T> CompletionStage<T> getObject(String key, Class<T> valueType) {
+        return supply(() -> redisClient.getObject(key, valueType));
+    }
+
+    @Override
+    public <T> CompletionStage<T> getAndDeleteObject(String key, Class<T> valueType) {
+        return supply(() -> redisClient.getAndDeleteObject(key, valueType));
+    }
+
+    @Override
+    public CompletionStage<Map<String, String>> getAndDeleteHash(String key) {
+        return supply(() -> redisClient.getAndDeleteHash(key));
+    }
+
+    @Override
+    public CompletionStage<Void> executeBatch(Consumer<IRedisBatch> writes) {
+        return run(() -> redisClient.executeBatch(writes));
+    }
+
+    private static CompletionStage<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private static <T> CompletionStage<T> supply(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
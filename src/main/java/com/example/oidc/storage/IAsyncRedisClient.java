@@ -0,0 +1,99 @@
+package com.example.oidc.storage;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking counterpart of {@link IRedisClient}. Every operation returns
+ * immediately; the stage completes when the command has been answered, and
+ * completes exceptionally if it failed. Reactive callers can wrap a stage with
+ * {@code Mono.fromCompletionStage}.
+ */
+public interface IAsyncRedisClient {
+
+    /**
+     * Stores a string value with expiration.
+     *
+     * @param key        the key to store the value under
+     * @param value      the string value to store
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return completes when the value is stored
+     */
+    CompletionStage<Void> setValue(String key, String value, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Retrieves a string value.
+     *
+     * @param key the key to retrieve
+     * @return the value, or null if not found
+     */
+    CompletionStage<String> getValue(String key);
+
+    /**
+     * Retrieves and deletes a string value atomically (GETDEL).
+     *
+     * @param key the key to retrieve and delete
+     * @return the value, or null if not found
+     */
+    CompletionStage<String> getAndDelete(String key);
+
+    /**
+     * Deletes a key.
+     *
+     * @param key the key to delete
+     * @return completes when the key is deleted
+     */
+    CompletionStage<Void> delete(String key);
+
+    /**
+     * Stores an object with expiration.
+     *
+     * @param <T>        the type of the object
+     * @param key        the key to store the object under
+     * @param value      the object to store
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return completes when the object is stored
+     */
+    <T> CompletionStage<Void> setObject(String key, T value, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Retrieves an object.
+     *
+     * @param <T>       the type of the object
+     * @param key       the key to retrieve
+     * @param valueType the class type of the object
+     * @return the object, or null if not found
+     */
+    <T> CompletionStage<T> getObject(String key, Class<T> valueType);
+
+    /**
+     * Retrieves and deletes an object atomically (GETDEL).
+     *
+     * @param <T>       the type of the object
+     * @param key       the key to retrieve and delete
+     * @param valueType the class type of the object
+     * @return the object, or null if not found
+     */
+    <T> CompletionStage<T> getAndDeleteObject(String key, Class<T> valueType);
+
+    /**
+     * Retrieves and deletes a hash atomically.
+     *
+     * @param key the key of the hash
+     * @return the fields, or null if not found
+     */
+    CompletionStage<Map<String, String>> getAndDeleteHash(String key);
+
+    /**
+     * Sends a group of writes without waiting for each reply. Like
+     * {@link IRedisClient#executeBatch} the writes are not a transaction.
+     *
+     * @param writes adds the writes to the batch
+     * @return completes when every write has been answered
+     */
+    CompletionStage<Void> executeBatch(Consumer<IRedisBatch> writes);
+}
@@ -1,8 +1,7 @@
 package com.example.oidc.storage;
 
-import com.example.oidc.dto.IdCardSession;
-import com.example.oidc.dto.MobileIdSession;
-import com.example.oidc.dto.SmartIdSession;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 /**
  * Interface for OIDC session storage operations.
@@ -12,52 +11,66 @@ import com.example.oidc.dto.SmartIdSession;
 public interface IOidcSessionStore {
 
     /**
-     * Stores a Mobile-ID authentication session.
+     * Stores a new authentication session.
      *
      * @param sessionId the unique session identifier
-     * @param session   the Mobile-ID session data
+     * @param session   the session data
      */
-    void storeMobileIdSession(String sessionId, MobileIdSession session);
+    void storeAuthSession(String sessionId, AuthSession session);
 
     /**
-     * Retrieves a Mobile-ID authentication session.
+     * Retrieves an authentication session.
      *
+     * @param method    the authentication method the session must belong to
      * @param sessionId the unique session identifier
-     * @return the Mobile-ID session data or null if not found
+     * @return the session data, or null if not found or started for another
+     *         method
      */
-    MobileIdSession getMobileIdSession(String sessionId);
+    AuthSession getAuthSession(AuthMethod method, String sessionId);
 
     /**
-     * Stores a Smart-ID authentication session.
+     * Changes the state of a pending session without rewriting the rest of it.
      *
      * @param sessionId the unique session identifier
-     * @param session   the Smart-ID session data
+     * @param state     the new state
+     * @param error     why the authentication failed, or null
+     * @return whether the session still existed
      */
-    void storeSmartIdSession(String sessionId, SmartIdSession session);
+    boolean updateAuthSessionState(String sessionId, AuthSession.State state, String error);
 
     /**
-     * Retrieves a Smart-ID authentication session.
+     * Records that the user of a pending session has authenticated, moving it
+     * to {@link AuthSession.State#AUTHENTICATED}. The code is issued later by
+     * {@link #finalizeSession}.
      *
      * @param sessionId the unique session identifier
-     * @return the Smart-ID session data or null if not found
+     * @param user      the authenticated user; its nonce is not stored
+     * @return whether the session still existed
      */
-    SmartIdSession getSmartIdSession(String sessionId);
+    boolean storeAuthenticatedUser(String sessionId, UserInfo user);
 
     /**
-     * Stores an ID-Card authentication session.
+     * Extends the lease of the node polling the upstream for a pending session,
+     * see {@link AuthSession#getPolledUntil()}. Subscribers are not notified.
      *
-     * @param sessionId the unique session identifier
-     * @param session   the ID-Card session data
+     * @param sessionId   the unique session identifier
+     * @param polledUntil the end of the lease (epoch millis)
+     * @return false if the session no longer exists; true otherwise, also when
+     *         storage could not be reached, so a short outage doesn't stop polling
      */
-    void storeIdCardSession(String sessionId, IdCardSession session);
+    boolean renewPollLease(String sessionId, long polledUntil);
 
     /**
-     * Retrieves an ID-Card authentication session.
+     * Follows the state changes of a session made on any node: each successful
+     * {@link #updateAuthSessionState} or {@link #storeAuthenticatedUser} is
+     * delivered while the subscription is open. Changes made before subscribing
+     * are not; read the session after subscribing to catch up.
      *
      * @param sessionId the unique session identifier
-     * @return the ID-Card session data or null if not found
+     * @param listener  called with each new state
+     * @return the subscription, to close when no longer interested
      */
-    IdCardSession getIdCardSession(String sessionId);
+    IRedisClient.Subscription subscribeAuthSession(String sessionId, Consumer<AuthSession.State> listener);
 
     /**
      * Stores an authorization code associated with user information.
@@ -68,7 +81,7 @@ public interface IOidcSessionStore {
     void storeCode(String code, UserInfo user);
 
     /**
-     * Stores an authorization code with PKCE data.
+     * Stores an authorization code with PKCE data as a single record.
      *
      * @param code     the authorization code
      * @param user     the user information to associate with the code
@@ -77,12 +90,30 @@ public interface IOidcSessionStore {
     void storeCode(String code, UserInfo user, com.example.oidc.dto.PkceData pkceData);
 
     /**
-     * Retrieves PKCE data for an authorization code.
+     * Completes an authentication: takes the pending session, deleting it in the
+     * same atomic operation, then stores the authorization code with the
+     * session's PKCE data and the user's certificate. Only one caller across
+     * all nodes can complete a session. If the code cannot be stored, the
+     * session is put back so that completing it can be retried.
+     *
+     * @param method    the authentication method of the session
+     * @param sessionId the session to complete
+     * @param code      the authorization code
+     * @param user      the authenticated user
+     * @return whether the code was issued; false if the session was already
+     *         completed or has expired, or the code could not be stored
+     */
+    boolean finalizeSession(AuthMethod method, String sessionId, String code, UserInfo user);
+
+    /**
+     * Redeems an authorization code. The code is removed in the same atomic
+     * operation, so it can be redeemed at most once across all nodes.
      *
      * @param code the authorization code
-     * @return the PKCE data or null if not found or PKCE not used
+     * @return the user information and PKCE data stored with the code, or null
+     *         if the code is unknown, expired or already redeemed
      */
-    com.example.oidc.dto.PkceData getPkceDataByCode(String code);
+    AuthorizationCode consumeCode(String code);
 
     /**
      * Stores an access token associated with user information.
@@ -93,12 +124,11 @@ public interface IOidcSessionStore {
     void storeToken(String token, UserInfo user);
 
     /**
-     * Retrieves user information by authorization code.
+     * Removes an access token so it can no longer be used.
      *
-     * @param code the authorization code
-     * @return the user information or null if not found
+     * @param token the access token
      */
-    UserInfo getUserByCode(String code);
+    void removeToken(String token);
 
     /**
      * Retrieves user information by access token.
@@ -107,4 +137,52 @@ public interface IOidcSessionStore {
      * @return the user information or null if not found
      */
     UserInfo getUserByToken(String token);
+
+    /**
+     * Resolves a certificate stored by fingerprint when a code or token was
+     * stored. Each lookup extends the certificate's lifetime.
+     *
+     * @param fingerprint the certificate fingerprint from
+     *                    {@link UserInfo#getCertFingerprint()}
+     * @return the base64 encoded certificate or null if not found
+     */
+    String getCertificate(String fingerprint);
+
+    /**
+     * Asynchronous {@link #storeAuthSession}: returns once the write is sent.
+     *
+     * @param sessionId the unique session identifier
+     * @param session   the session data
+     * @return completes when the session is stored; failures are logged
+     */
+    CompletionStage<Void> storeAuthSessionAsync(String sessionId, AuthSession session);
+
+    /**
+     * Asynchronous {@link #finalizeSession}: returns once the session is taken.
+     *
+     * @param method    the authentication method of the session
+     * @param sessionId the session to complete
+     * @param code      the authorization code
+     * @param user      the authenticated user
+     * @return whether the code was issued; failures are logged and complete
+     *         with false
+     */
+    CompletionStage<Boolean> finalizeSessionAsync(AuthMethod method, String sessionId, String code, UserInfo user);
+
+    /**
+     * Asynchronous {@link #consumeCode}.
+     *
+     * @param code the authorization code
+     * @return the stored code, or null if it is unknown, expired or already used
+     */
+    CompletionStage<AuthorizationCode> consumeCodeAsync(String code);
+
+    /**
+     * Asynchronous {@link #storeToken}: returns once the writes are sent.
+     *
+     * @param token the access token
+     * @param user  the user information to associate with the token
+     * @return completes when the token is stored; failures are logged
+     */
+    CompletionStage<Void> storeTokenAsync(String token, UserInfo user);
 }
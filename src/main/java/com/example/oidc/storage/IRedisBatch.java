@@ -0,0 +1,52 @@
+package com.example.oidc.storage;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes collected by {@link IRedisClient#executeBatch} and sent together.
+ */
+public interface IRedisBatch {
+
+    /**
+     * Queues a string value with expiration.
+     *
+     * @param key        the key to store the value under
+     * @param value      the string value to store
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return this batch
+     */
+    IRedisBatch setValue(String key, String value, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Queues an object with expiration.
+     *
+     * @param <T>        the type of the object
+     * @param key        the key to store the object under
+     * @param value      the object to store
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return this batch
+     */
+    <T> IRedisBatch setObject(String key, T value, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Queues a hash with expiration, replacing any previous value of the key.
+     *
+     * @param key        the key to store the hash under
+     * @param fields     the fields of the hash
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return this batch
+     */
+    IRedisBatch setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Queues a key deletion.
+     *
+     * @param key the key to delete
+     * @return this batch
+     */
+    IRedisBatch delete(String key);
+}
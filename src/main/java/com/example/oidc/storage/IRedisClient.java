@@ -1,6 +1,11 @@
 package com.example.oidc.storage;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Interface for Redis client operations.
@@ -8,6 +13,14 @@ import java.util.concurrent.TimeUnit;
  */
 public interface IRedisClient {
 
+    /**
+     * A channel subscription; closing it stops the deliveries.
+     */
+    interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
     /**
      * Stores a string value in Redis with expiration.
      *
@@ -34,6 +47,25 @@ public interface IRedisClient {
      */
     String getValue(String key);
 
+    /**
+     * Atomically retrieves and deletes a string value (GETDEL).
+     *
+     * @param key the key to retrieve and delete
+     * @return the string value or null if not found
+     */
+    String getAndDelete(String key);
+
+    /**
+     * Retrieves a string value and resets its expiration in the same command
+     * (GETEX), so entries that are still in use don't expire.
+     *
+     * @param key        the key to retrieve the value for
+     * @param expiration the new expiration time
+     * @param timeUnit   the time unit for expiration
+     * @return the string value or null if not found
+     */
+    String getAndExpire(String key, long expiration, TimeUnit timeUnit);
+
     /**
      * Deletes a key from Redis.
      *
@@ -70,4 +102,148 @@ public interface IRedisClient {
      * @return the deserialized object or null if not found
      */
     <T> T getObject(String key, Class<T> valueType);
+
+    /**
+     * Atomically retrieves and deletes an object, so only one caller across all
+     * nodes can ever obtain it.
+     *
+     * @param <T>       the type of the object
+     * @param key       the key to retrieve and delete
+     * @param valueType the class type of the object
+     * @return the deserialized object or null if not found
+     */
+    <T> T getAndDeleteObject(String key, Class<T> valueType);
+
+    /**
+     * Stores a hash, replacing any previous value of the key, with expiration.
+     *
+     * @param key        the key to store the hash under
+     * @param fields     the fields of the hash
+     * @param expiration the expiration time
+     * @param timeUnit   the time unit for expiration
+     */
+    void setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit);
+
+    /**
+     * Retrieves all fields of a hash (HGETALL).
+     *
+     * @param key the key of the hash
+     * @return the fields, or null if not found
+     */
+    Map<String, String> getHash(String key);
+
+    /**
+     * Sets some fields of an existing hash, keeping its other fields and its
+     * expiration. Nothing is written if the key doesn't exist, so an expired
+     * hash is never brought back without a TTL.
+     *
+     * @param key    the key of the hash
+     * @param fields the fields to set
+     * @return whether the hash existed and was updated
+     */
+    boolean updateHash(String key, Map<String, String> fields);
+
+    /**
+     * Atomically retrieves and deletes a hash, so only one caller across all
+     * nodes can ever obtain it.
+     *
+     * @param key the key of the hash
+     * @return the fields, or null if not found
+     */
+    Map<String, String> getAndDeleteHash(String key);
+
+    /**
+     * Sends a message to the subscribers of a channel on every node. Delivery
+     * is fire-and-forget: nodes not subscribed at that moment never see it.
+     *
+     * @param channel the channel
+     * @param message the message
+     */
+    void publish(String channel, String message);
+
+    /**
+     * Receives the messages published on a channel until the subscription is
+     * closed. Listeners run on a notification thread of the client.
+     *
+     * @param channel  the channel
+     * @param listener called with each message
+     * @return the subscription
+     */
+    Subscription subscribe(String channel, Consumer<String> listener);
+
+    /**
+     * Retrieves an object for a read that tolerates replication lag; it may be
+     * served by a replica. A key that is not found there yet is read from the
+     * primary, so a value written just before is still found.
+     *
+     * @param <T>       the type of the object
+     * @param key       the key to retrieve
+     * @param valueType the class type of the object
+     * @return the deserialized object or null if not found
+     */
+    default <T> T getObjectFromReplica(String key, Class<T> valueType) {
+        return getObject(key, valueType);
+    }
+
+    /**
+     * Retrieves several string values in one round trip (MGET).
+     *
+     * @param keys the keys to retrieve
+     * @return the values in key order, with null for missing keys
+     */
+    default List<String> multiGet(List<String> keys) {
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(getValue(key));
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves several objects in one round trip.
+     *
+     * @param <T>       the type of the objects
+     * @param keys      the keys to retrieve
+     * @param valueType the class type of the objects
+     * @return the objects in key order, with null for missing keys
+     */
+    default <T> List<T> multiGetObjects(List<String> keys, Class<T> valueType) {
+        List<T> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            values.add(getObject(key, valueType));
+        }
+        return values;
+    }
+
+    /**
+     * Stores several string values, each with its own expiration, in one round
+     * trip.
+     *
+     * @param values     the values to store by key
+     * @param expiration the expiration time of each key
+     * @param timeUnit   the time unit for expiration
+     * @throws IllegalArgumentException if the keys of values and expiration
+     *                                  differ; nothing is written then
+     */
+    default void multiSet(Map<String, String> values, Map<String, Long> expiration, TimeUnit timeUnit) {
+        if (!values.keySet().equals(expiration.keySet())
+                || expiration.values().stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Every key needs exactly one value and one expiration");
+        }
+        executeBatch(batch -> values.forEach(
+                (key, value) -> batch.setValue(key, value, expiration.get(key), timeUnit)));
+    }
+
+    /**
+     * Sends a group of writes in one round trip (pipelined). The writes are
+     * applied in order but are not a transaction: a failure can leave some of
+     * them applied.
+     *
+     * @param writes adds the writes to the batch
+     */
+    default void executeBatch(Consumer<IRedisBatch> writes) {
+        RedisBatch batch = new RedisBatch();
+        writes.accept(batch);
+        batch.applyTo(this);
+    }
 }
@@ -0,0 +1,302 @@
+package com.example.oidc.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.util.HierarchicalTimingWheel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Node-local {@link IRedisClient} for single-node installs and tests that run
+ * without a Redis server (oidc.storage.backend=memory).
+ * <p>
+ * Keys live in a concurrent map and expire through a hierarchical timing
+ * wheel, so expiry costs O(1) per write and per tick instead of a scan.
+ * Reads also compare the entry's deadline, so an expired key is never
+ * returned even between ticks. Objects are kept in their encoded form, like in
+ * Redis, so callers can't change a stored value by mutating the object they
+ * stored or read.
+ */
+@Component
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "memory")
+public class InMemoryRedisClient implements IRedisClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryRedisClient.class);
+    private static final long DEFAULT_EXPIRATION_SECONDS = 300;
+    // Rough per-entry overhead of the map node, entry and wheel entry
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    // Rough per-field overhead of a hash's map node
+    private static final long FIELD_OVERHEAD_BYTES = 32;
+
+    // value is a String (setValue), the encoded object (setObject) or an
+    // immutable map (setHash)
+    private record StoredValue(Object value, long expiresAtMillis) {
+        boolean isExpired(long nowMillis) {
+            return expiresAtMillis <= nowMillis;
+        }
+
+        long sizeInBytes(String key) {
+            long valueBytes;
+            if (value instanceof byte[] bytes) {
+                valueBytes = bytes.length;
+            } else if (value instanceof Map<?, ?> fields) {
+                valueBytes = 0;
+                for (Map.Entry<?, ?> field : fields.entrySet()) {
+                    valueBytes += FIELD_OVERHEAD_BYTES
+                            + 2L * (((String) field.getKey()).length() + ((String) field.getValue()).length());
+                }
+            } else {
+                valueBytes = 2L * ((String) value).length();
+            }
+            return ENTRY_OVERHEAD_BYTES + 2L * key.length() + valueBytes;
+        }
+    }
+
+    private final Map<String, StoredValue> entries = new ConcurrentHashMap<>();
+    private final AtomicLong approximateBytes = new AtomicLong();
+    private final HierarchicalTimingWheel<String> expiryWheel;
+    private final ScheduledExecutorService expiryExecutor;
+    private final ObjectCodecRegistry codecs;
+    // Single node: subscribers are all in this process
+    private final LocalPubSub pubSub = new LocalPubSub();
+
+    @Autowired
+    public InMemoryRedisClient(ObjectCodecRegistry codecs,
+            @Value("${oidc.storage.memory.tick-millis:100}") long tickMillis,
+            MeterRegistry meterRegistry) {
+        this.codecs = codecs;
+        this.expiryWheel = new HierarchicalTimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.expiryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inmemory-redis-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.expiryExecutor.scheduleAtFixedRate(this::expireDueKeys, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("oidc.storage.memory.keys", entries, Map::size)
+                .description("Keys held by the in-memory storage backend")
+                .register(meterRegistry);
+        Gauge.builder("oidc.storage.memory.bytes", approximateBytes, AtomicLong::get)
+                .description("Approximate memory used by the in-memory storage backend")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        logger.info("Using in-memory storage backend (expiry tick {} ms); data is not shared between nodes",
+                tickMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryExecutor.shutdownNow();
+    }
+
+    @Override
+    public void setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        put(key, value, expiration, timeUnit);
+    }
+
+    @Override
+    public void setValue(String key, String value) {
+        setValue(key, value, DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String getValue(String key) {
+        return asString(get(key));
+    }
+
+    @Override
+    public String getAndDelete(String key) {
+        return asString(remove(key));
+    }
+
+    @Override
+    public String getAndExpire(String key, long expiration, TimeUnit timeUnit) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + timeUnit.toMillis(expiration);
+        StoredValue updated = entries.computeIfPresent(key,
+                (k, current) -> current.isExpired(now) ? current : new StoredValue(current.value(), expiresAt));
+        if (updated == null || updated.isExpired(now)) {
+            return null;
+        }
+        expiryWheel.schedule(key, expiresAt);
+        return asString(updated.value());
+    }
+
+    @Override
+    public void delete(String key) {
+        remove(key);
+    }
+
+    @Override
+    public <T> void setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        try {
+            put(key, codecs.encode(value), expiration, timeUnit);
+        } catch (IOException e) {
+            logger.error("Failed to serialize object for key: {}", key, e);
+            throw new RuntimeException("Failed to serialize object", e);
+        }
+    }
+
+    @Override
+    public <T> void setObject(String key, T value) {
+        setObject(key, value, DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public <T> T getObject(String key, Class<T> valueType) {
+        return decode(key, get(key), valueType);
+    }
+
+    @Override
+    public <T> T getAndDeleteObject(String key, Class<T> valueType) {
+        return decode(key, remove(key), valueType);
+    }
+
+    @Override
+    public void setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit) {
+        put(key, Map.copyOf(fields), expiration, timeUnit);
+    }
+
+    @Override
+    public Map<String, String> getHash(String key) {
+        return asHash(get(key));
+    }
+
+    @Override
+    public boolean updateHash(String key, Map<String, String> fields) {
+        long now = System.currentTimeMillis();
+        StoredValue[] replaced = new StoredValue[1];
+        StoredValue updated = entries.computeIfPresent(key, (k, current) -> {
+            if (current.isExpired(now)) {
+                return current;
+            }
+            Map<String, String> merged = new HashMap<>(asHash(current.value()));
+            merged.putAll(fields);
+            replaced[0] = current;
+            return new StoredValue(Map.copyOf(merged), current.expiresAtMillis());
+        });
+        if (replaced[0] == null) {
+            return false;
+        }
+        approximateBytes.addAndGet(updated.sizeInBytes(key) - replaced[0].sizeInBytes(key));
+        return true;
+    }
+
+    @Override
+    public Map<String, String> getAndDeleteHash(String key) {
+        return asHash(remove(key));
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        pubSub.publish(channel, message);
+    }
+
+    @Override
+    public Subscription subscribe(String channel, Consumer<String> listener) {
+        return pubSub.subscribe(channel, listener);
+    }
+
+    private void put(String key, Object value, long expiration, TimeUnit timeUnit) {
+        long expiresAt = System.currentTimeMillis() + timeUnit.toMillis(expiration);
+        StoredValue stored = new StoredValue(value, expiresAt);
+        StoredValue previous = entries.put(key, stored);
+        approximateBytes.addAndGet(stored.sizeInBytes(key) - (previous != null ? previous.sizeInBytes(key) : 0));
+        expiryWheel.schedule(key, expiresAt);
+    }
+
+    private Object get(String key) {
+        StoredValue stored = entries.get(key);
+        if (stored == null) {
+            return null;
+        }
+        if (stored.isExpired(System.currentTimeMillis())) {
+            removeEntry(key, stored);
+            return null;
+        }
+        return stored.value();
+    }
+
+    // Atomic like GETDEL: only one caller can remove a given entry
+    private Object remove(String key) {
+        StoredValue stored = entries.remove(key);
+        if (stored == null) {
+            return null;
+        }
+        approximateBytes.addAndGet(-stored.sizeInBytes(key));
+        return stored.isExpired(System.currentTimeMillis()) ? null : stored.value();
+    }
+
+    private void removeEntry(String key, StoredValue stored) {
+        if (entries.remove(key, stored)) {
+            approximateBytes.addAndGet(-stored.sizeInBytes(key));
+        }
+    }
+
+    private void expireDueKeys() {
+        try {
+            long now = System.currentTimeMillis();
+            expiryWheel.advance(now, key -> {
+                // The key may have been rewritten with a later expiry since this deadline was scheduled
+                StoredValue stored = entries.get(key);
+                if (stored != null && stored.isExpired(now)) {
+                    removeEntry(key, stored);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Failed to expire in-memory keys", e);
+        }
+    }
+
+    private static String asString(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        // Same as reading an object key with GET in Redis
+        return new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> asHash(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Map<?, ?>)) {
+            // Same as HGETALL on a string key in Redis
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return (Map<String, String>) value;
+    }
+
+    private <T> T decode(String key, Object value, Class<T> valueType) {
+        if (value == null)
+            return null;
+        try {
+            byte[] data = value instanceof byte[] bytes ? bytes : ((String) value).getBytes(StandardCharsets.UTF_8);
+            return codecs.decode(data, valueType);
+        } catch (IOException e) {
+            logger.error("Failed to deserialize object for key: {}", key, e);
+            throw new RuntimeException("Failed to deserialize object", e);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.oidc.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Actuator endpoint (/actuator/keyspace) reporting what the session store
+ * keeps in Redis: key count, value size (average, p99, max) and remaining TTL
+ * for each key prefix of {@link OidcSessionStore}, plus everything else under
+ * "other".
+ * <p>
+ * Reading the endpoint returns the last report and, when it is older than
+ * oidc.storage.keyspace.min-interval-seconds, starts a new run in the
+ * background. A run walks the keyspace with SCAN, pausing so that it never
+ * visits more than max-keys-per-second keys, and measures MEMORY USAGE and
+ * PTTL only for a uniform sample of each prefix (reservoir sampling), so its
+ * load on Redis stays small and bounded however many keys there are. Sizes
+ * and TTLs describe the sample; key counts are exact unless the run stopped
+ * at max-keys.
+ */
+@Component
+@Endpoint(id = "keyspace")
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "redis", matchIfMissing = true)
+public class KeyspaceAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyspaceAnalyzer.class);
+    static final String OTHER = "other";
+    private static final long COMMAND_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Sizes in bytes as reported by MEMORY USAGE (key, value and overhead).
+     * ttl counts the sampled keys by remaining lifetime.
+     */
+    public record PrefixStats(long keys, int sampled, long avgBytes, long p99Bytes, long maxBytes,
+            Map<String, Long> ttl) {
+    }
+
+    public record Report(Instant startedAt, long durationMillis, long scannedKeys, boolean complete,
+            Map<String, PrefixStats> prefixes) {
+    }
+
+    /**
+     * @param running whether a run is in progress
+     * @param lastRun the last finished run, or null before the first one
+     */
+    public record Status(boolean running, Report lastRun) {
+    }
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final List<String> prefixes;
+    private final int scanCount;
+    private final long maxKeysPerSecond;
+    private final long maxKeys;
+    private final int samplesPerPrefix;
+    private final long minIntervalMillis;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor;
+    private volatile Report lastReport;
+
+    public KeyspaceAnalyzer(LettuceConnectionFactory connectionFactory,
+            @Value("${oidc.storage.keyspace.scan-count:200}") int scanCount,
+            @Value("${oidc.storage.keyspace.max-keys-per-second:2000}") long maxKeysPerSecond,
+            @Value("${oidc.storage.keyspace.max-keys:1000000}") long maxKeys,
+            @Value("${oidc.storage.keyspace.samples-per-prefix:1000}") int samplesPerPrefix,
+            @Value("${oidc.storage.keyspace.min-interval-seconds:300}") long minIntervalSeconds) {
+        this.connectionFactory = connectionFactory;
+        this.prefixes = OidcSessionStore.KEY_PREFIXES;
+        this.scanCount = scanCount;
+        this.maxKeysPerSecond = maxKeysPerSecond;
+        this.maxKeys = maxKeys;
+        this.samplesPerPrefix = samplesPerPrefix;
+        this.minIntervalMillis = TimeUnit.SECONDS.toMillis(minIntervalSeconds);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "keyspace-analyzer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @ReadOperation
+    public Status keyspace() {
+        Report last = lastReport;
+        boolean stale = last == null
+                || System.currentTimeMillis() - last.startedAt().toEpochMilli() >= minIntervalMillis;
+        if (stale && running.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    lastReport = analyze();
+                } catch (Exception e) {
+                    logger.error("Keyspace analysis failed: {}", e.getMessage(), e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+        return new Status(running.get(), lastReport);
+    }
+
+    private Report analyze() throws Exception {
+        long started = System.currentTimeMillis();
+        Map<String, Accumulator> byPrefix = new LinkedHashMap<>();
+        for (String prefix : prefixes) {
+            byPrefix.put(prefix, new Accumulator(samplesPerPrefix));
+        }
+        byPrefix.put(OTHER, new Accumulator(samplesPerPrefix));
+
+        long scanned = 0;
+        boolean complete;
+        // A connection of its own, closed after the run
+        try (StatefulConnection<String, String> connection = connect()) {
+            RedisClusterAsyncCommands<String, String> commands = commands(connection);
+            ScanArgs args = ScanArgs.Builder.limit(scanCount);
+            KeyScanCursor<String> cursor = await(commands.scan(args));
+            while (true) {
+                List<String> sampledKeys = new ArrayList<>();
+                List<Accumulator> sampledIn = new ArrayList<>();
+                List<Integer> slots = new ArrayList<>();
+                for (String key : cursor.getKeys()) {
+                    Accumulator accumulator = byPrefix.get(prefixOf(key));
+                    int slot = accumulator.offer();
+                    if (slot >= 0) {
+                        sampledKeys.add(key);
+                        sampledIn.add(accumulator);
+                        slots.add(slot);
+                    }
+                }
+                scanned += cursor.getKeys().size();
+                measure(commands, sampledKeys, sampledIn, slots);
+
+                complete = cursor.isFinished();
+                if (complete || scanned >= maxKeys) {
+                    break;
+                }
+                throttle(started, scanned);
+                cursor = await(commands.scan(cursor, args));
+            }
+        }
+
+        Map<String, PrefixStats> stats = new LinkedHashMap<>();
+        byPrefix.forEach((prefix, accumulator) -> stats.put(prefix, accumulator.stats()));
+        long duration = System.currentTimeMillis() - started;
+        logger.info("Keyspace analysis scanned {} keys in {} ms{}", scanned, duration,
+                complete ? "" : " (stopped at oidc.storage.keyspace.max-keys)");
+        return new Report(Instant.ofEpochMilli(started), duration, scanned, complete, stats);
+    }
+
+    // MEMORY USAGE and PTTL of a page's sampled keys, sent together
+    private static void measure(RedisClusterAsyncCommands<String, String> commands, List<String> keys,
+            List<Accumulator> accumulators, List<Integer> slots) throws Exception {
+        List<RedisFuture<Long>> sizes = new ArrayList<>(keys.size());
+        List<RedisFuture<Long>> ttls = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            sizes.add(commands.memoryUsage(key));
+            ttls.add(commands.pttl(key));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            accumulators.get(i).record(slots.get(i), await(sizes.get(i)), await(ttls.get(i)));
+        }
+    }
+
+    // Sleeps until the keys scanned so far fit within max-keys-per-second
+    private void throttle(long started, long scanned) throws InterruptedException {
+        long earliest = started + scanned * 1000 / Math.max(1, maxKeysPerSecond);
+        long wait = earliest - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    String prefixOf(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return OTHER;
+    }
+
+    private StatefulConnection<String, String> connect() {
+        AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+        if (client instanceof RedisClusterClient cluster) {
+            // SCAN on a cluster connection walks every primary in turn
+            return cluster.connect();
+        }
+        return ((io.lettuce.core.RedisClient) client).connect();
+    }
+
+    private static RedisClusterAsyncCommands<String, String> commands(StatefulConnection<String, String> connection) {
+        if (connection instanceof StatefulRedisClusterConnection<String, String> cluster) {
+            return cluster.async();
+        }
+        return ((StatefulRedisConnection<String, String>) connection).async();
+    }
+
+    private static <T> T await(RedisFuture<T> future) throws Exception {
+        return future.get(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Key count and a fixed-size uniform sample (reservoir) of one prefix.
+     */
+    static class Accumulator {
+        private static final long[] TTL_LIMITS_SECONDS = { 60, 300, 3600, 86_400 };
+        private static final String[] TTL_BUCKETS = { "<1m", "1m-5m", "5m-1h", "1h-1d", ">1d" };
+        private static final String NO_TTL = "none";
+
+        private final long[] sizes;
+        private final long[] ttlMillis;
+        private long keys;
+
+        Accumulator(int samples) {
+            this.sizes = new long[samples];
+            this.ttlMillis = new long[samples];
+            Arrays.fill(sizes, -1);
+        }
+
+        /**
+         * Counts a key and decides whether it goes into the sample.
+         *
+         * @return the sample slot to record the key's measurements in, or -1
+         */
+        int offer() {
+            keys++;
+            if (keys <= sizes.length) {
+                return (int) (keys - 1);
+            }
+            long candidate = ThreadLocalRandom.current().nextLong(keys);
+            return candidate < sizes.length ? (int) candidate : -1;
+        }
+
+        /**
+         * @param slot      the slot returned by {@link #offer()}
+         * @param bytes     MEMORY USAGE, or null if the key is gone
+         * @param ttlMillis PTTL (-1 without expiry, -2 if the key is gone)
+         */
+        void record(int slot, Long bytes, Long ttlMillis) {
+            if (bytes == null || ttlMillis == null || ttlMillis == -2) {
+                // Keep the key measured there before, if any
+                return;
+            }
+            sizes[slot] = bytes;
+            this.ttlMillis[slot] = ttlMillis;
+        }
+
+        PrefixStats stats() {
+            long[] measured = new long[sizes.length];
+            Map<String, Long> ttl = new LinkedHashMap<>();
+            int n = 0;
+            long total = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] < 0) {
+                    continue;
+                }
+                measured[n++] = sizes[i];
+                total += sizes[i];
+                ttl.merge(ttlBucket(ttlMillis[i]), 1L, Long::sum);
+            }
+            if (n == 0) {
+                return new PrefixStats(keys, 0, 0, 0, 0, ttl);
+            }
+            Arrays.sort(measured, 0, n);
+            int p99 = Math.max(0, (int) Math.ceil(n * 0.99) - 1);
+            return new PrefixStats(keys, n, total / n, measured[p99], measured[n - 1], ttl);
+        }
+
+        private static String ttlBucket(long ttlMillis) {
+            if (ttlMillis < 0) {
+                return NO_TTL;
+            }
+            long seconds = ttlMillis / 1000;
+            for (int i = 0; i < TTL_LIMITS_SECONDS.length; i++) {
+                if (seconds < TTL_LIMITS_SECONDS[i]) {
+                    return TTL_BUCKETS[i];
+                }
+            }
+            return TTL_BUCKETS[TTL_BUCKETS.length - 1];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.oidc.storage;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nimbusds.jwt.JWTParser;
+
+/**
+ * Lifetime of each kind of record in the session store, so records stay in
+ * Redis for as long as they are usable and no longer.
+ * <p>
+ * Authorization codes (with their PKCE challenge) and pending login sessions
+ * use configured lifetimes; finished sessions are deleted when the code is
+ * issued. Access tokens live until their own exp claim.
+ */
+@Component
+public class KeyspaceTtlPolicy {
+
+    private final long codeSeconds;
+    private final long mobileIdSessionSeconds;
+    private final long smartIdSessionSeconds;
+    private final long idCardSessionSeconds;
+    private final long tokenFallbackSeconds;
+
+    public KeyspaceTtlPolicy() {
+        this(300, 300, 300, 300, 3600);
+    }
+
+    @Autowired
+    public KeyspaceTtlPolicy(@Value("${oidc.storage.ttl.code-seconds:300}") long codeSeconds,
+            @Value("${oidc.storage.ttl.mobileid-session-seconds:300}") long mobileIdSessionSeconds,
+            @Value("${oidc.storage.ttl.smartid-session-seconds:300}") long smartIdSessionSeconds,
+            @Value("${oidc.storage.ttl.idcard-session-seconds:300}") long idCardSessionSeconds,
+            @Value("${oidc.access-token.lifetime-seconds:3600}") long tokenFallbackSeconds) {
+        this.codeSeconds = codeSeconds;
+        this.mobileIdSessionSeconds = mobileIdSessionSeconds;
+        this.smartIdSessionSeconds = smartIdSessionSeconds;
+        this.idCardSessionSeconds = idCardSessionSeconds;
+        this.tokenFallbackSeconds = tokenFallbackSeconds;
+    }
+
+    public long codeSeconds() {
+        return codeSeconds;
+    }
+
+    public long sessionSeconds(AuthMethod method) {
+        return switch (method) {
+            case MOBILE_ID -> mobileIdSessionSeconds;
+            case SMART_ID -> smartIdSessionSeconds;
+            case ID_CARD -> idCardSessionSeconds;
+        };
+    }
+
+    /**
+     * Seconds until the token's exp claim, or the configured access token
+     * lifetime if the token has none or isn't a JWT. Already expired tokens
+     * get one second so the write still succeeds and expires at once.
+     *
+     * @param token the serialized access token
+     * @return the TTL of the token record
+     */
+    public long tokenSeconds(String token) {
+        try {
+            Date exp = JWTParser.parse(token).getJWTClaimsSet().getExpirationTime();
+            if (exp == null) {
+                return tokenFallbackSeconds;
+            }
+            long remainingMillis = exp.getTime() - System.currentTimeMillis();
+            // Round up so the record never goes before the token does
+            return Math.max(1, (remainingMillis + 999) / 1000);
+        } catch (ParseException e) {
+            return tokenFallbackSeconds;
+        }
+    }
+}
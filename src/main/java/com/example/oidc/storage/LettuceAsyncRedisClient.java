@@ -0,0 +1,266 @@
+package com.example.oidc.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * {@link IAsyncRedisClient} on Lettuce's native async API. Commands from all
+ * threads are multiplexed over one connection opened from the Spring
+ * connection factory's client, so no servlet thread is held while Redis
+ * answers. Values are stored exactly like {@link RedisClient} stores them, so
+ * both clients can be used on the same keys. Like {@link RedisClient}, writes
+ * drop this node's tracked copy of the key, so the node reads its own writes.
+ */
+@Component
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "redis", matchIfMissing = true)
+public class LettuceAsyncRedisClient implements IAsyncRedisClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LettuceAsyncRedisClient.class);
+    private static final RedisCodec<String, byte[]> CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final ObjectCodecRegistry codecs;
+    // Optional local cache of frequently polled keys (oidc.storage.tracking.enabled)
+    private final ClientTrackingCache trackingCache;
+    private volatile StatefulConnection<String, byte[]> connection;
+    private volatile RedisClusterAsyncCommands<String, byte[]> commands;
+
+    public LettuceAsyncRedisClient(LettuceConnectionFactory connectionFactory, ObjectCodecRegistry codecs) {
+        this(connectionFactory, codecs, (ClientTrackingCache) null);
+    }
+
+    @Autowired
+    public LettuceAsyncRedisClient(LettuceConnectionFactory connectionFactory, ObjectCodecRegistry codecs,
+            ObjectProvider<ClientTrackingCache> trackingCache) {
+        this(connectionFactory, codecs, trackingCache.getIfAvailable());
+    }
+
+    LettuceAsyncRedisClient(LettuceConnectionFactory connectionFactory, ObjectCodecRegistry codecs,
+            ClientTrackingCache trackingCache) {
+        this.connectionFactory = connectionFactory;
+        this.codecs = codecs;
+        this.trackingCache = trackingCache;
+    }
+
+    // Drops a cached copy of a key this node is about to change
+    private void evictTracked(String key) {
+        if (trackingCache != null) {
+            trackingCache.evict(key);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        StatefulConnection<String, byte[]> current = connection;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        return set(key, value.getBytes(StandardCharsets.UTF_8), expiration, timeUnit);
+    }
+
+    @Override
+    public CompletionStage<String> getValue(String key) {
+        return call("retrieve value for key", key, commands -> commands.get(key))
+                .thenApply(LettuceAsyncRedisClient::asString);
+    }
+
+    @Override
+    public CompletionStage<String> getAndDelete(String key) {
+        evictTracked(key);
+        return call("retrieve and delete value for key", key, commands -> commands.getdel(key))
+                .thenApply(LettuceAsyncRedisClient::asString);
+    }
+
+    @Override
+    public CompletionStage<Void> delete(String key) {
+        evictTracked(key);
+        return call("delete key", key, commands -> commands.del(key)).thenApply(deleted -> null);
+    }
+
+    @Override
+    public <T> CompletionStage<Void> setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        byte[] data;
+        try {
+            data = codecs.encode(value);
+        } catch (IOException e) {
+            logger.error("Failed to serialize object for key: {}", key, e);
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to serialize object", e));
+        }
+        return set(key, data, expiration, timeUnit);
+    }
+
+    @Override
+    public <T> CompletionStage<T> getObject(String key, Class<T> valueType) {
+        return call("retrieve object for key", key, commands -> commands.get(key))
+                .thenApply(data -> decode(key, data, valueType));
+    }
+
+    @Override
+    public <T> CompletionStage<T> getAndDeleteObject(String key, Class<T> valueType) {
+        evictTracked(key);
+        return call("retrieve and delete object for key", key, commands -> commands.getdel(key))
+                .thenApply(data -> decode(key, data, valueType));
+    }
+
+    @Override
+    public CompletionStage<Map<String, String>> getAndDeleteHash(String key) {
+        evictTracked(key);
+        return call("retrieve and delete hash for key", key,
+                commands -> commands.<List<Object>>eval(RedisClient.GET_AND_DELETE_HASH_SCRIPT,
+                        ScriptOutputType.MULTI, key))
+                .thenApply(RedisClient::toHash);
+    }
+
+    @Override
+    public CompletionStage<Void> executeBatch(Consumer<IRedisBatch> writes) {
+        RedisBatch batch = new RedisBatch();
+        writes.accept(batch);
+        // Encode everything up front so a serialization error sends nothing
+        List<byte[]> values = new ArrayList<>(batch.operations().size());
+        for (RedisBatch.Operation operation : batch.operations()) {
+            try {
+                values.add(switch (operation.kind()) {
+                    case SET_VALUE -> operation.value().getBytes(StandardCharsets.UTF_8);
+                    case SET_OBJECT -> codecs.encode(operation.object());
+                    case SET_HASH, DELETE -> null;
+                });
+            } catch (IOException e) {
+                logger.error("Failed to serialize object for key: {}", operation.key(), e);
+                return CompletableFuture.failedFuture(new RuntimeException("Failed to serialize object", e));
+            }
+        }
+        // The commands are written back to back on the shared connection
+        // without waiting for each other's replies
+        List<CompletableFuture<?>> replies = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            RedisBatch.Operation operation = batch.operations().get(i);
+            byte[] value = values.get(i);
+            replies.add(switch (operation.kind()) {
+                case DELETE -> {
+                    evictTracked(operation.key());
+                    yield call("delete key", operation.key(), commands -> commands.del(operation.key()));
+                }
+                case SET_HASH -> setHash(operation.key(), operation.fields(), operation.expiration(),
+                        operation.timeUnit());
+                default -> set(operation.key(), value, operation.expiration(), operation.timeUnit());
+            });
+        }
+        return CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> set(String key, byte[] value, long expiration, TimeUnit timeUnit) {
+        evictTracked(key);
+        SetArgs args = SetArgs.Builder.px(timeUnit.toMillis(expiration));
+        return call("store value for key", key, commands -> commands.set(key, value, args)).thenApply(ok -> null);
+    }
+
+    // One script, see RedisClient.SET_HASH_SCRIPT
+    private CompletableFuture<Void> setHash(String key, Map<String, String> fields, long expiration,
+            TimeUnit timeUnit) {
+        evictTracked(key);
+        byte[][] arguments = new byte[1 + fields.size() * 2][];
+        arguments[0] = Long.toString(timeUnit.toMillis(expiration)).getBytes(StandardCharsets.UTF_8);
+        int i = 1;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            arguments[i++] = field.getKey().getBytes(StandardCharsets.UTF_8);
+            arguments[i++] = field.getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        return call("store hash for key", key,
+                commands -> commands.<Long>eval(RedisClient.SET_HASH_SCRIPT, ScriptOutputType.INTEGER,
+                        new String[] { key }, arguments))
+                .thenApply(stored -> null);
+    }
+
+    private <R> CompletableFuture<R> call(String action, String key,
+            Function<RedisClusterAsyncCommands<String, byte[]>, CompletionStage<R>> command) {
+        CompletionStage<R> stage;
+        try {
+            stage = command.apply(commands());
+        } catch (RuntimeException e) {
+            // Connecting failed
+            logger.error("Failed to connect to Redis server. Unable to {}: {}", action, key, e);
+            return CompletableFuture.failedFuture(new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e));
+        }
+        return stage.toCompletableFuture().exceptionallyCompose(e -> {
+            logger.error("Unexpected error in Redis while trying to {}: {}", action, key, e);
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to " + action + " in Redis", e));
+        });
+    }
+
+    // Connects on first use, so the application starts while Redis is down
+    // like it does with the template-based client
+    private RedisClusterAsyncCommands<String, byte[]> commands() {
+        RedisClusterAsyncCommands<String, byte[]> current = commands;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (commands == null) {
+                AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+                if (client instanceof RedisClusterClient cluster) {
+                    StatefulRedisClusterConnection<String, byte[]> clusterConnection = cluster.connect(CODEC);
+                    connection = clusterConnection;
+                    commands = clusterConnection.async();
+                } else {
+                    StatefulRedisConnection<String, byte[]> standalone = ((io.lettuce.core.RedisClient) client)
+                            .connect(CODEC);
+                    connection = standalone;
+                    commands = standalone.async();
+                }
+                logger.info("Opened async Redis connection");
+            }
+            return commands;
+        }
+    }
+
+    private static String asString(byte[] data) {
+        return data != null ? new String(data, StandardCharsets.UTF_8) : null;
+    }
+
+    private <T> T decode(String key, byte[] data, Class<T> valueType) {
+        if (data == null)
+            return null;
+        try {
+            return codecs.decode(data, valueType);
+        } catch (IOException e) {
+            logger.error("Failed to deserialize object for key: {}", key, e);
+            throw new RuntimeException("Failed to deserialize object", e);
+        }
+    }
+}
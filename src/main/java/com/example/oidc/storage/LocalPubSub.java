@@ -0,0 +1,46 @@
+package com.example.oidc.storage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish/subscribe within this process, for the single-node backends
+ * (memory, mmap). Messages are delivered on the publishing thread.
+ */
+class LocalPubSub {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalPubSub.class);
+
+    private final Map<String, Set<Consumer<String>>> subscribers = new ConcurrentHashMap<>();
+
+    void publish(String channel, String message) {
+        Set<Consumer<String>> listeners = subscribers.get(channel);
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                logger.error("Subscriber of channel {} failed: {}", channel, e.getMessage(), e);
+            }
+        }
+    }
+
+    IRedisClient.Subscription subscribe(String channel, Consumer<String> listener) {
+        subscribers.compute(channel, (c, listeners) -> {
+            Set<Consumer<String>> set = listeners != null ? listeners : ConcurrentHashMap.newKeySet();
+            set.add(listener);
+            return set;
+        });
+        return () -> subscribers.computeIfPresent(channel, (c, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+}
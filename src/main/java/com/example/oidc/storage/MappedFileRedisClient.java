@@ -0,0 +1,582 @@
+package com.example.oidc.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.util.HierarchicalTimingWheel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Persistent single-node {@link IRedisClient} (oidc.storage.backend=mmap).
+ * Codes, tokens and pending authentication sessions survive a restart without
+ * an external store.
+ * <p>
+ * Every write is appended as a checksummed record to a memory-mapped log
+ * file; an in-memory index maps each key to its latest record, and reads copy
+ * the value straight out of the mapping. Deletes append a tombstone. On
+ * startup the log is replayed to rebuild the index, stopping at the first
+ * record that is incomplete or fails its checksum (a write torn by a crash).
+ * <p>
+ * Writes reach the page cache immediately, so they survive a process crash;
+ * the mapping is forced to disk every oidc.storage.mmap.sync-interval-millis,
+ * which bounds what a power loss can take. When expired and overwritten
+ * records outweigh live ones, or the file is full, live records are copied to
+ * a new file that atomically replaces the old one.
+ */
+@Component
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "mmap")
+public class MappedFileRedisClient implements IRedisClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileRedisClient.class);
+    private static final long DEFAULT_EXPIRATION_SECONDS = 300;
+    private static final long EXPIRY_TICK_MILLIS = 1000;
+    // Compaction is not worth it for less garbage than this
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_OBJECT = 2;
+    private static final byte TYPE_DELETE = 3;
+    private static final byte TYPE_HASH = 4;
+
+    // length (int), crc32c of the rest (int), type (byte), expiresAt (long), key length (int)
+    private static final int HEADER_BYTES = 4 + 4 + 1 + 8 + 4;
+
+    private record Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+        int capacity() {
+            return buffer.capacity();
+        }
+    }
+
+    private record Location(Segment segment, int recordOffset, int recordLength, int valueOffset,
+            int valueLength, byte type, long expiresAtMillis) {
+        boolean isExpired(long nowMillis) {
+            return expiresAtMillis <= nowMillis;
+        }
+    }
+
+    private final Path path;
+    private final int initialCapacity;
+    private final ObjectCodecRegistry codecs;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    // Single writer: appends, deletes and compaction
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong deadBytes = new AtomicLong();
+    private final HierarchicalTimingWheel<String> expiryWheel;
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final Counter compactionCounter;
+    // Single node: subscribers are all in this process
+    private final LocalPubSub pubSub = new LocalPubSub();
+    private volatile Segment segment;
+    private int writePosition;
+    private volatile boolean dirty;
+
+    @Autowired
+    public MappedFileRedisClient(ObjectCodecRegistry codecs,
+            @Value("${oidc.storage.mmap.path:data/oidc-store.log}") String path,
+            @Value("${oidc.storage.mmap.initial-size-mb:64}") int initialSizeMb,
+            @Value("${oidc.storage.mmap.sync-interval-millis:1000}") long syncIntervalMillis,
+            MeterRegistry meterRegistry) {
+        this.codecs = codecs;
+        this.path = Paths.get(path).toAbsolutePath();
+        this.initialCapacity = Math.multiplyExact(initialSizeMb, 1024 * 1024);
+        this.expiryWheel = new HierarchicalTimingWheel<>(EXPIRY_TICK_MILLIS, System.currentTimeMillis());
+        try {
+            Files.createDirectories(this.path.getParent());
+            recover();
+        } catch (IOException e) {
+            String errorMsg = "Failed to open session store file " + this.path + ": " + e.getMessage();
+            logger.error(errorMsg, e);
+            throw new RuntimeException(errorMsg, e);
+        }
+
+        this.compactionCounter = Counter.builder("oidc.storage.mmap.compactions")
+                .description("Compactions of the session store file")
+                .register(meterRegistry);
+        Gauge.builder("oidc.storage.mmap.keys", index, Map::size)
+                .description("Keys held by the memory-mapped storage backend")
+                .register(meterRegistry);
+        Gauge.builder("oidc.storage.mmap.live", liveBytes, AtomicLong::get)
+                .description("Bytes of live records in the session store file")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("oidc.storage.mmap.dead", deadBytes, AtomicLong::get)
+                .description("Bytes of expired, overwritten and deleted records awaiting compaction")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mmap-store-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maintenanceExecutor.scheduleAtFixedRate(this::expireDueKeys, EXPIRY_TICK_MILLIS, EXPIRY_TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        this.maintenanceExecutor.scheduleWithFixedDelay(this::syncAndCompact, syncIntervalMillis,
+                syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+        writeLock.lock();
+        try {
+            segment.buffer().force();
+            segment.channel().close();
+        } catch (IOException e) {
+            logger.error("Failed to close session store file {}: {}", path, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        append(key, TYPE_STRING, value.getBytes(StandardCharsets.UTF_8),
+                System.currentTimeMillis() + timeUnit.toMillis(expiration));
+    }
+
+    @Override
+    public void setValue(String key, String value) {
+        setValue(key, value, DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String getValue(String key) {
+        byte[] value = read(get(key));
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public String getAndDelete(String key) {
+        byte[] value = remove(key);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public String getAndExpire(String key, long expiration, TimeUnit timeUnit) {
+        writeLock.lock();
+        try {
+            Location location = get(key);
+            byte[] value = read(location);
+            if (value == null) {
+                return null;
+            }
+            // Rewritten with the new expiry, so the extension also survives a restart
+            append(key, location.type(), value, System.currentTimeMillis() + timeUnit.toMillis(expiration));
+            return new String(value, StandardCharsets.UTF_8);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        remove(key);
+    }
+
+    @Override
+    public <T> void setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        byte[] data;
+        try {
+            data = codecs.encode(value);
+        } catch (IOException e) {
+            logger.error("Failed to serialize object for key: {}", key, e);
+            throw new RuntimeException("Failed to serialize object", e);
+        }
+        append(key, TYPE_OBJECT, data, System.currentTimeMillis() + timeUnit.toMillis(expiration));
+    }
+
+    @Override
+    public <T> void setObject(String key, T value) {
+        setObject(key, value, DEFAULT_EXPIRATION_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public <T> T getObject(String key, Class<T> valueType) {
+        return decode(key, read(get(key)), valueType);
+    }
+
+    @Override
+    public <T> T getAndDeleteObject(String key, Class<T> valueType) {
+        return decode(key, remove(key), valueType);
+    }
+
+    @Override
+    public void setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit) {
+        append(key, TYPE_HASH, encodeHash(fields), System.currentTimeMillis() + timeUnit.toMillis(expiration));
+    }
+
+    @Override
+    public Map<String, String> getHash(String key) {
+        Location location = get(key);
+        return location != null ? decodeHash(location.type(), read(location)) : null;
+    }
+
+    @Override
+    public boolean updateHash(String key, Map<String, String> fields) {
+        writeLock.lock();
+        try {
+            Location location = get(key);
+            if (location == null) {
+                return false;
+            }
+            Map<String, String> merged = new HashMap<>(decodeHash(location.type(), read(location)));
+            merged.putAll(fields);
+            // The whole hash is appended again; the log has no partial records
+            append(key, TYPE_HASH, encodeHash(merged), location.expiresAtMillis());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> getAndDeleteHash(String key) {
+        writeLock.lock();
+        try {
+            Location location = get(key);
+            byte type = location != null ? location.type() : TYPE_HASH;
+            byte[] value = remove(key);
+            return value != null ? decodeHash(type, value) : null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        pubSub.publish(channel, message);
+    }
+
+    @Override
+    public Subscription subscribe(String channel, Consumer<String> listener) {
+        return pubSub.subscribe(channel, listener);
+    }
+
+    // Field count, then the length-prefixed UTF-8 name and value of each field
+    private static byte[] encodeHash(Map<String, String> fields) {
+        int size = 4;
+        byte[][] encoded = new byte[fields.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            encoded[i] = field.getKey().getBytes(StandardCharsets.UTF_8);
+            encoded[i + 1] = field.getValue().getBytes(StandardCharsets.UTF_8);
+            size += 8 + encoded[i].length + encoded[i + 1].length;
+            i += 2;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(fields.size());
+        for (byte[] part : encoded) {
+            buffer.putInt(part.length).put(part);
+        }
+        return buffer.array();
+    }
+
+    private static Map<String, String> decodeHash(byte type, byte[] data) {
+        if (type != TYPE_HASH) {
+            // Same as HGETALL on a string key in Redis
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int count = buffer.getInt();
+        Map<String, String> fields = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            fields.put(readString(buffer), readString(buffer));
+        }
+        return fields;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Location get(String key) {
+        Location location = index.get(key);
+        if (location == null || location.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return location;
+    }
+
+    private static byte[] read(Location location) {
+        if (location == null) {
+            return null;
+        }
+        byte[] value = new byte[location.valueLength()];
+        // Absolute get: safe alongside concurrent appends and reads of the same buffer
+        location.segment().buffer().get(location.valueOffset(), value);
+        return value;
+    }
+
+    private byte[] remove(String key) {
+        writeLock.lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            byte[] value = location.isExpired(System.currentTimeMillis()) ? null : read(location);
+            append(key, TYPE_DELETE, new byte[0], 0);
+            return value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void append(String key, byte type, byte[] value, long expiresAtMillis) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = HEADER_BYTES + keyBytes.length + value.length;
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(recordLength).putInt(0).put(type).putLong(expiresAtMillis).putInt(keyBytes.length)
+                .put(keyBytes).put(value);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 8, recordLength - 8);
+        record.putInt(4, (int) crc.getValue());
+
+        writeLock.lock();
+        try {
+            if (writePosition + recordLength > segment.capacity()) {
+                compact(recordLength);
+            }
+            int offset = writePosition;
+            segment.buffer().put(offset, record.array());
+            writePosition += recordLength;
+            dirty = true;
+            apply(key, new Location(segment, offset, recordLength, offset + HEADER_BYTES + keyBytes.length,
+                    value.length, type, expiresAtMillis));
+        } catch (IOException e) {
+            logger.error("Failed to write key {} to session store file {}", key, path, e);
+            throw new RuntimeException("Failed to write to session store file", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Updates the index and byte counters for a record that was just written or replayed
+    private void apply(String key, Location location) {
+        Location previous;
+        if (location.type() == TYPE_DELETE) {
+            previous = index.remove(key);
+            deadBytes.addAndGet(location.recordLength());
+        } else {
+            previous = index.put(key, location);
+            liveBytes.addAndGet(location.recordLength());
+            expiryWheel.schedule(key, location.expiresAtMillis());
+        }
+        if (previous != null) {
+            liveBytes.addAndGet(-previous.recordLength());
+            deadBytes.addAndGet(previous.recordLength());
+        }
+    }
+
+    private void recover() throws IOException {
+        Segment recovered = open(path, initialCapacity, false);
+        MappedByteBuffer buffer = recovered.buffer();
+        segment = recovered;
+        int position = 0;
+        int records = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int recordLength = buffer.getInt(position);
+            if (recordLength == 0) {
+                break;
+            }
+            if (recordLength < HEADER_BYTES || position + recordLength > buffer.capacity()
+                    || !checksumMatches(buffer, position, recordLength)) {
+                logger.warn("Discarding incomplete record at offset {} of {} (torn write)", position, path);
+                // Zero the tail so leftovers of the torn record can't be mistaken for records later
+                for (int i = position; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+            byte type = buffer.get(position + 8);
+            long expiresAt = buffer.getLong(position + 9);
+            int keyLength = buffer.getInt(position + 17);
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(position + HEADER_BYTES, keyBytes);
+            int valueOffset = position + HEADER_BYTES + keyLength;
+            apply(new String(keyBytes, StandardCharsets.UTF_8), new Location(recovered, position, recordLength,
+                    valueOffset, recordLength - HEADER_BYTES - keyLength, type, expiresAt));
+            position += recordLength;
+            records++;
+        }
+        writePosition = position;
+        expireDueKeys();
+        logger.info("Session store {} recovered: {} records replayed, {} live keys", path, records, index.size());
+    }
+
+    private static boolean checksumMatches(MappedByteBuffer buffer, int position, int recordLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + 8, recordLength - 8));
+        return (int) crc.getValue() == buffer.getInt(position + 4);
+    }
+
+    /**
+     * Copies all live records to a new file that atomically replaces the
+     * current one. The new file is sized to hold the live records and the
+     * pending record with room to spare.
+     */
+    void compact(int pendingRecordBytes) throws IOException {
+        writeLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            long live = 0;
+            for (Location location : index.values()) {
+                if (!location.isExpired(now)) {
+                    live += location.recordLength();
+                }
+            }
+            long needed = 2 * (live + pendingRecordBytes);
+            long capacity = initialCapacity;
+            while (capacity < needed) {
+                capacity *= 2;
+            }
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("Session store file would exceed 2 GB");
+            }
+
+            Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+            Files.deleteIfExists(compactPath);
+            Segment opened = open(compactPath, (int) capacity, true);
+            // Known by its final path: it replaces the current file before any location in it is published
+            Segment compacted = new Segment(path, opened.channel(), opened.buffer());
+            Map<Location, Location> moved = new IdentityHashMap<>();
+            int position = 0;
+            byte[] copy = new byte[0];
+            for (Location location : index.values()) {
+                if (location.isExpired(now)) {
+                    continue;
+                }
+                if (copy.length < location.recordLength()) {
+                    copy = new byte[location.recordLength()];
+                }
+                location.segment().buffer().get(location.recordOffset(), copy, 0, location.recordLength());
+                compacted.buffer().put(position, copy, 0, location.recordLength());
+                moved.put(location, new Location(compacted, position, location.recordLength(),
+                        position + (location.valueOffset() - location.recordOffset()), location.valueLength(),
+                        location.type(), location.expiresAtMillis()));
+                position += location.recordLength();
+            }
+            compacted.buffer().force();
+            Files.move(compactPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+
+            Segment previous = segment;
+            segment = compacted;
+            long movedBytes = 0;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location relocated = moved.get(entry.getValue());
+                // Entries expired meanwhile were removed by the expiry wheel and are not replaced
+                if (relocated != null && index.replace(entry.getKey(), entry.getValue(), relocated)) {
+                    movedBytes += relocated.recordLength();
+                }
+            }
+            // Entries skipped as expired still point into the old file
+            index.values().removeIf(location -> location.segment() != compacted);
+            writePosition = position;
+            liveBytes.set(movedBytes);
+            deadBytes.set(position - movedBytes);
+            // Readers still holding locations in the old file keep its mapping alive until they finish
+            previous.channel().close();
+            compactionCounter.increment();
+            logger.info("Compacted session store {}: {} live keys, {} bytes", path, index.size(), position);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename itself is still atomic
+            logger.debug("Could not sync directory {}: {}", path.getParent(), e.getMessage());
+        }
+    }
+
+    private static Segment open(Path path, int capacity, boolean truncate) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (truncate) {
+            channel.truncate(0);
+        }
+        // An existing file keeps its size if it was grown by an earlier compaction
+        int size = (int) Math.max(capacity, channel.size());
+        return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    private void expireDueKeys() {
+        try {
+            long now = System.currentTimeMillis();
+            expiryWheel.advance(now, key -> {
+                // Expired records need no tombstone: their expiry is in the record itself
+                Location location = index.get(key);
+                if (location != null && location.isExpired(now) && index.remove(key, location)) {
+                    liveBytes.addAndGet(-location.recordLength());
+                    deadBytes.addAndGet(location.recordLength());
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Failed to expire session store keys", e);
+        }
+    }
+
+    private void syncAndCompact() {
+        try {
+            if (dirty) {
+                dirty = false;
+                segment.buffer().force();
+            }
+            long dead = deadBytes.get();
+            if (dead > MIN_COMPACTION_BYTES && dead > liveBytes.get()) {
+                compact(0);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Session store maintenance failed for {}: {}", path, e.getMessage(), e);
+        }
+    }
+
+    private <T> T decode(String key, byte[] data, Class<T> valueType) {
+        if (data == null)
+            return null;
+        try {
+            return codecs.decode(data, valueType);
+        } catch (IOException e) {
+            logger.error("Failed to deserialize object for key: {}", key, e);
+            throw new RuntimeException("Failed to deserialize object", e);
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.example.oidc.storage;
 
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Set;
 
 public class OidcClient {
     private final String clientId;
     private final String clientSecret;
     private final List<String> redirectUris;
+    private final Set<String> redirectUriSet; // hash lookup for redirect_uri validation
     private final String scope;
+    private final String signingAlgorithm; // JWS alg for issued tokens, null = provider default
 
     public OidcClient(String clientId, String clientSecret, List<String> redirectUris, String scope) {
+        this(clientId, clientSecret, redirectUris, scope, null);
+    }
+
+    public OidcClient(String clientId, String clientSecret, List<String> redirectUris, String scope,
+            String signingAlgorithm) {
         this.clientId = clientId;
         this.clientSecret = clientSecret;
-        this.redirectUris = new ArrayList<>(redirectUris);
+        this.redirectUris = List.copyOf(redirectUris);
+        this.redirectUriSet = Set.copyOf(redirectUris);
         this.scope = scope;
+        this.signingAlgorithm = signingAlgorithm;
     }
 
     public String getClientId() {
@@ -26,12 +34,12 @@ public class OidcClient {
     }
 
     public List<String> getRedirectUris() {
-        return Collections.unmodifiableList(redirectUris);
+        return redirectUris;
     }
 
     public String getRedirectUri(String incomingRedirectUri) {
         // Return the matching registered redirect URI if it exists
-        if (redirectUris.contains(incomingRedirectUri)) {
+        if (isValidRedirectUri(incomingRedirectUri)) {
             return incomingRedirectUri;
         }
         // If not found, return the first one as default (for backward compatibility)
@@ -39,10 +47,14 @@ public class OidcClient {
     }
 
     public boolean isValidRedirectUri(String uri) {
-        return redirectUris.contains(uri);
+        return uri != null && redirectUriSet.contains(uri);
     }
 
     public String getScope() {
         return scope;
     }
-}
\ No newline at end of file
+
+    public String getSigningAlgorithm() {
+        return signingAlgorithm;
+    }
+}
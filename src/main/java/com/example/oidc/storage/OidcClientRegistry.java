@@ -4,32 +4,159 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.example.oidc.service.IJwtSigningService;
+import com.nimbusds.jose.JOSEException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 
 @Component
 public class OidcClientRegistry {
     private static final Logger logger = LoggerFactory.getLogger(OidcClientRegistry.class);
-    private final Map<String, OidcClient> clients = new HashMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * Immutable view of the clients file: client_id -> client and
+     * redirect_uri -> client indexes, plus the file stamp they were read from.
+     * A reload builds a new snapshot and swaps the reference, so readers never
+     * lock and always see one consistent version of the file.
+     */
+    private record Snapshot(Map<String, OidcClient> clients, Map<String, OidcClient> clientsByRedirectUri,
+            long lastModified, long length) {
+    }
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    // Checks each client's signing algorithm; null skips the check
+    private final IJwtSigningService jwtSigningService;
+    private final Counter reloadSuccessCounter;
+    private final Counter reloadFailureCounter;
+    private final ScheduledExecutorService reloadExecutor;
+    // Stamp of the last file version that failed to load, so a broken file is
+    // reported once instead of on every poll
+    private volatile long failedLastModified = -1;
+    private volatile long failedLength = -1;
+
     @Value("${oidc.clients-config}")
     private String clientsConfigPath;
 
     public OidcClientRegistry(@Value("${oidc.clients-config}") String clientsConfigPath) {
+        this(clientsConfigPath, 0, new SimpleMeterRegistry(), null);
+    }
+
+    @Autowired
+    public OidcClientRegistry(@Value("${oidc.clients-config}") String clientsConfigPath,
+            @Value("${oidc.clients-reload-interval-seconds:10}") long reloadIntervalSeconds,
+            MeterRegistry meterRegistry, IJwtSigningService jwtSigningService) {
         this.clientsConfigPath = clientsConfigPath;
-        loadClientsFromConfig();
+        this.jwtSigningService = jwtSigningService;
+        // The initial load must succeed; later reloads fall back to the current snapshot
+        this.snapshot.set(loadClientsFromConfig());
+
+        this.reloadSuccessCounter = Counter.builder("oidc.clients.reloads")
+                .description("Reloads of the OIDC clients configuration")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.reloadFailureCounter = Counter.builder("oidc.clients.reloads")
+                .description("Reloads of the OIDC clients configuration")
+                .tag("result", "failure")
+                .register(meterRegistry);
+        Gauge.builder("oidc.clients.count", snapshot, s -> s.get().clients().size())
+                .description("Number of registered OIDC clients")
+                .register(meterRegistry);
+
+        if (reloadIntervalSeconds > 0) {
+            this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "oidc-clients-reload");
+                t.setDaemon(true);
+                return t;
+            });
+            this.reloadExecutor.scheduleWithFixedDelay(this::reloadIfChanged, reloadIntervalSeconds,
+                    reloadIntervalSeconds, TimeUnit.SECONDS);
+            logger.info("Watching {} for client changes every {}s", clientsConfigPath, reloadIntervalSeconds);
+        } else {
+            this.reloadExecutor = null;
+        }
+    }
+
+    /**
+     * Reloads the clients file if its modification time or size changed since
+     * the current snapshot was read. A file that fails to parse or validate is
+     * logged and counted, and the current snapshot stays in place.
+     *
+     * @return true if a new snapshot was published
+     */
+    public boolean reloadIfChanged() {
+        try {
+            File configFile = new File(clientsConfigPath);
+            long lastModified = configFile.lastModified();
+            long length = configFile.length();
+            Snapshot current = snapshot.get();
+            if (lastModified == current.lastModified() && length == current.length()) {
+                return false;
+            }
+            if (lastModified == failedLastModified && length == failedLength) {
+                return false;
+            }
+            return reload();
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while checking OIDC clients configuration: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads and validates the clients file and publishes it as the new snapshot.
+     *
+     * @return true if the new snapshot was published, false if the file was
+     *         invalid and the current snapshot was kept
+     */
+    public boolean reload() {
+        File configFile = new File(clientsConfigPath);
+        try {
+            Snapshot loaded = loadClientsFromConfig();
+            snapshot.set(loaded);
+            failedLastModified = -1;
+            failedLength = -1;
+            reloadSuccessCounter.increment();
+            logger.info("Reloaded OIDC clients configuration: {} clients", loaded.clients().size());
+            return true;
+        } catch (RuntimeException e) {
+            failedLastModified = configFile.lastModified();
+            failedLength = configFile.length();
+            reloadFailureCounter.increment();
+            logger.error("Keeping previous OIDC clients configuration, reload failed: {}", e.getMessage());
+            return false;
+        }
     }
 
-    private void loadClientsFromConfig() {
+    @PreDestroy
+    public void shutdown() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+
+    private Snapshot loadClientsFromConfig() {
         // Handle file: prefix if present
         String filePath = clientsConfigPath;
         File configFile = new File(filePath);
@@ -43,6 +170,10 @@ public class OidcClientRegistry {
         }
 
         try {
+            // Stamp taken before reading, so a write during the read is picked up by the next poll
+            long lastModified = configFile.lastModified();
+            long length = configFile.length();
+            Map<String, OidcClient> clients = new LinkedHashMap<>();
             JsonNode root = objectMapper.readTree(configFile);
             JsonNode clientsArray = root.get("clients");
 
@@ -57,6 +188,9 @@ public class OidcClientRegistry {
                 String clientId = clientNode.has("clientId") ? clientNode.get("clientId").asText() : null;
                 String clientSecret = clientNode.has("clientSecret") ? clientNode.get("clientSecret").asText() : null;
                 String scope = clientNode.has("scope") ? clientNode.get("scope").asText() : null;
+                String signingAlgorithm = clientNode.has("signingAlgorithm")
+                        ? clientNode.get("signingAlgorithm").asText()
+                        : null;
 
                 // Parse redirectUri as either array or single string
                 List<String> redirectUris = new ArrayList<>();
@@ -72,7 +206,9 @@ public class OidcClientRegistry {
                 }
 
                 if (clientId != null && clientSecret != null && !redirectUris.isEmpty() && scope != null) {
-                    OidcClient client = new OidcClient(clientId, clientSecret, redirectUris, scope);
+                    checkSigningAlgorithm(clientId, signingAlgorithm);
+                    OidcClient client = new OidcClient(clientId, clientSecret, redirectUris, scope,
+                            signingAlgorithm);
                     clients.put(clientId, client);
                     logger.info("Loaded OIDC client [{}]: {} with redirect URIs: {}", index, clientId, redirectUris);
                 } else {
@@ -88,6 +224,7 @@ public class OidcClientRegistry {
             }
 
             logger.info("Total clients loaded: {}", clients.size());
+            return new Snapshot(Map.copyOf(clients), indexByRedirectUri(clients), lastModified, length);
 
         } catch (IOException e) {
             String errorMsg = "Failed to load OIDC clients configuration: " + e.getMessage();
@@ -96,21 +233,46 @@ public class OidcClientRegistry {
         }
     }
 
+    // A client whose algorithm has no active key would only fail at /token,
+    // after its authorization code was already used up
+    private void checkSigningAlgorithm(String clientId, String signingAlgorithm) {
+        if (jwtSigningService == null) {
+            return;
+        }
+        try {
+            jwtSigningService.resolveAlgorithm(signingAlgorithm);
+        } catch (JOSEException | RuntimeException e) {
+            String errorMsg = "Invalid signingAlgorithm '" + signingAlgorithm + "' for client " + clientId + ": "
+                    + e.getMessage();
+            logger.error(errorMsg);
+            throw new RuntimeException(errorMsg, e);
+        }
+    }
+
+    private static Map<String, OidcClient> indexByRedirectUri(Map<String, OidcClient> clients) {
+        Map<String, OidcClient> index = new HashMap<>();
+        for (OidcClient client : clients.values()) {
+            for (String redirectUri : client.getRedirectUris()) {
+                OidcClient existing = index.putIfAbsent(redirectUri, client);
+                if (existing != null && existing != client) {
+                    logger.warn("Redirect URI {} is registered for both {} and {}; using {}",
+                            redirectUri, existing.getClientId(), client.getClientId(), existing.getClientId());
+                }
+            }
+        }
+        return Map.copyOf(index);
+    }
+
     public OidcClient getClient(String clientId) {
-        return clients.get(clientId);
+        return clientId != null ? snapshot.get().clients().get(clientId) : null;
     }
 
     public OidcClient isValidClient(String clientId, String redirectUri) {
-        OidcClient client = clients.get(clientId);
+        OidcClient client = getClient(clientId);
         return (client != null && client.isValidRedirectUri(redirectUri)) ? client : null;
     }
 
     public OidcClient getClientByReturnUri(String returnUri) {
-        for (OidcClient client : clients.values()) {
-            if (client.isValidRedirectUri(returnUri)) {
-                return client;
-            }
-        }
-        return null;
+        return returnUri != null ? snapshot.get().clientsByRedirectUri().get(returnUri) : null;
     }
 }
@@ -1,71 +1,257 @@
 package com.example.oidc.storage;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.example.oidc.dto.IdCardSession;
-import com.example.oidc.dto.MobileIdSession;
-import com.example.oidc.dto.SmartIdSession;
+import com.example.oidc.dto.PkceData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.nimbusds.jwt.JWTParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 @Component
 public class OidcSessionStore implements IOidcSessionStore {
-    private static final String MOBILEID_SESSION_PREFIX = "mobileid:session:";
+    // One hash per login in progress, for every method (see AuthSession)
+    private static final String AUTH_SESSION_PREFIX = "auth:session:";
     private static final String CODE_PREFIX = "oidc:code:";
     private static final String TOKEN_PREFIX = "oidc:token:";
-    private static final String SMARTID_SESSION_PREFIX = "smartid:session:";
-    private static final String PKCE_PREFIX = "oidc:pkce:";
+    private static final String CERT_PREFIX = "oidc:cert:";
+    // Pub/sub channel of a session's state changes (not a key)
+    private static final String AUTH_EVENT_PREFIX = "auth:events:";
+    // Every kind of key this store writes
+    static final List<String> KEY_PREFIXES = List.of(AUTH_SESSION_PREFIX, CODE_PREFIX, TOKEN_PREFIX, CERT_PREFIX);
 
     private static final Logger log = LoggerFactory.getLogger(OidcSessionStore.class);
 
     private final IRedisClient redisClient;
+    private final IAsyncRedisClient asyncRedisClient;
+    private final KeyspaceTtlPolicy ttlPolicy;
+    // Node-local near-cache of token -> user. Issued tokens never change, so an
+    // entry only has to go when the token expires or is revoked on this node
+    private final Cache<String, UserInfo> tokenCache;
+    private final long tokenCacheMaxTtlNanos;
+    // Certificates are immutable per fingerprint. Local entries are dropped
+    // well before the Redis TTL so active certificates still get it refreshed
+    private final Cache<String, String> certCache;
+    private final long certTtlSeconds;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private static final String IDCARD_SESSION_PREFIX = "idcard-session:";
+    public OidcSessionStore(IRedisClient redisClient) {
+        this(redisClient, new DirectAsyncRedisClient(redisClient), new KeyspaceTtlPolicy(), 10_000, 60, 86_400,
+                new SimpleMeterRegistry());
+    }
 
     @Autowired
-    public OidcSessionStore(IRedisClient redisClient) {
+    public OidcSessionStore(IRedisClient redisClient, IAsyncRedisClient asyncRedisClient, KeyspaceTtlPolicy ttlPolicy,
+            @Value("${oidc.storage.token-cache.max-size:10000}") long tokenCacheMaxSize,
+            @Value("${oidc.storage.token-cache.max-ttl-seconds:60}") long tokenCacheMaxTtlSeconds,
+            @Value("${oidc.storage.cert-ttl-seconds:86400}") long certTtlSeconds,
+            MeterRegistry meterRegistry) {
         this.redisClient = redisClient;
+        this.asyncRedisClient = asyncRedisClient;
+        this.ttlPolicy = ttlPolicy;
+        this.tokenCacheMaxTtlNanos = TimeUnit.SECONDS.toNanos(tokenCacheMaxTtlSeconds);
+        this.tokenCache = Caffeine.newBuilder()
+                .maximumSize(tokenCacheMaxSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokenCache, "oidc.token.userinfo");
+
+        this.certTtlSeconds = certTtlSeconds;
+        this.certCache = Caffeine.newBuilder()
+                .maximumSize(tokenCacheMaxSize)
+                .expireAfterWrite(Math.max(1, Math.min(certTtlSeconds / 4, 600)), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, certCache, "oidc.certificate");
+    }
+
+    /**
+     * Expires a cached token at its own exp claim, and no later than the
+     * configured max TTL so a token revoked on another node stops resolving here
+     * within that bound.
+     */
+    private class TokenExpiry implements Expiry<String, UserInfo> {
+        @Override
+        public long expireAfterCreate(String token, UserInfo user, long currentTime) {
+            return Math.min(tokenCacheMaxTtlNanos, nanosUntilExpiry(token));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, UserInfo user, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String token, UserInfo user, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Redis key of an access token: the base64url SHA-256 of the serialized JWT
+     * (43 characters) instead of the JWT itself, which runs to several hundred
+     * bytes. The hash also keeps bearer tokens out of key dumps and logs.
+     */
+    static String tokenKey(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return TOKEN_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Fingerprint of a base64 encoded certificate: the base64url SHA-256 of its
+     * DER bytes, the same value as the x5t#S256 JWK parameter.
+     */
+    static String certFingerprint(String cert) {
+        byte[] der;
+        try {
+            der = Base64.getMimeDecoder().decode(cert);
+        } catch (IllegalArgumentException e) {
+            der = cert.getBytes(StandardCharsets.US_ASCII);
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(der);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Queues the user's certificate once under its fingerprint. Re-storing a
+     * certificate just extends its lifetime.
+     */
+    private void storeCertificate(IRedisBatch batch, UserInfo user, UserInfo stored) {
+        if (user != null && user.getCert() != null) {
+            batch.setValue(CERT_PREFIX + stored.getCertFingerprint(), user.getCert(), certTtlSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    // Copy of the user that only references the certificate by fingerprint
+    private static UserInfo detachCertificate(UserInfo user) {
+        if (user == null || user.getCert() == null) {
+            return user;
+        }
+        return user.withCertFingerprint(certFingerprint(user.getCert()));
+    }
+
+    private void cacheCertificate(UserInfo user, UserInfo stored) {
+        if (user != null && user.getCert() != null) {
+            certCache.put(stored.getCertFingerprint(), user.getCert());
+        }
+    }
+
+    private static long nanosUntilExpiry(String token) {
+        try {
+            // Only tokens found in Redis are cached, so the exp claim is our own
+            Date exp = JWTParser.parse(token).getJWTClaimsSet().getExpirationTime();
+            if (exp == null) {
+                return Long.MAX_VALUE;
+            }
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(exp.getTime() - System.currentTimeMillis()));
+        } catch (ParseException e) {
+            return 0;
+        }
     }
 
     @Override
-    public void storeMobileIdSession(String sessionId, MobileIdSession session) {
+    public void storeAuthSession(String sessionId, AuthSession session) {
         try {
-            redisClient.setObject(MOBILEID_SESSION_PREFIX + sessionId, session);
+            redisClient.setHash(AUTH_SESSION_PREFIX + sessionId, session.toFields(),
+                    ttlPolicy.sessionSeconds(session.getMethod()), TimeUnit.SECONDS);
         } catch (Exception e) {
-            log.error("Failed to store MobileId session {}: {}", sessionId, e.getMessage());
+            log.error("Failed to store {} session {}: {}", session.getMethod(), sessionId, e.getMessage());
         }
     }
 
     @Override
-    public MobileIdSession getMobileIdSession(String sessionId) {
+    public AuthSession getAuthSession(AuthMethod method, String sessionId) {
         try {
-            return redisClient.getObject(MOBILEID_SESSION_PREFIX + sessionId, MobileIdSession.class);
+            AuthSession session = AuthSession.fromFields(redisClient.getHash(AUTH_SESSION_PREFIX + sessionId));
+            // A session id is only good for the method it was started with
+            return session != null && session.getMethod() == method ? session : null;
         } catch (Exception e) {
-            log.error("Failed to get MobileId session {}: {}", sessionId, e.getMessage());
+            log.error("Failed to get {} session {}: {}", method, sessionId, e.getMessage());
             return null;
         }
     }
 
     @Override
-    public void storeSmartIdSession(String sessionId, SmartIdSession session) {
+    public boolean updateAuthSessionState(String sessionId, AuthSession.State state, String error) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(AuthSession.STATE, state.name());
+        if (error != null) {
+            fields.put(AuthSession.ERROR, error);
+        }
+        return updateAuthSession(sessionId, state, fields);
+    }
+
+    @Override
+    public boolean storeAuthenticatedUser(String sessionId, UserInfo user) {
+        Map<String, String> fields = AuthSession.userFields(user);
+        fields.put(AuthSession.STATE, AuthSession.State.AUTHENTICATED.name());
+        return updateAuthSession(sessionId, AuthSession.State.AUTHENTICATED, fields);
+    }
+
+    @Override
+    public boolean renewPollLease(String sessionId, long polledUntil) {
         try {
-            redisClient.setObject(SMARTID_SESSION_PREFIX + sessionId, session);
+            return redisClient.updateHash(AUTH_SESSION_PREFIX + sessionId,
+                    Map.of(AuthSession.POLLED_UNTIL, Long.toString(polledUntil)));
         } catch (Exception e) {
-            log.error("Failed to store SmartId session {}: {}", sessionId, e.getMessage());
+            log.error("Failed to renew poll lease of session {}: {}", sessionId, e.getMessage());
+            return true;
         }
     }
 
-    @Override
-    public SmartIdSession getSmartIdSession(String sessionId) {
+    // Writes the fields, then tells subscribers on any node about the new state
+    private boolean updateAuthSession(String sessionId, AuthSession.State state, Map<String, String> fields) {
+        boolean updated;
         try {
-            return redisClient.getObject(SMARTID_SESSION_PREFIX + sessionId, SmartIdSession.class);
+            updated = redisClient.updateHash(AUTH_SESSION_PREFIX + sessionId, fields);
         } catch (Exception e) {
-            log.error("Failed to get SmartId session {}: {}", sessionId, e.getMessage());
-            return null;
+            log.error("Failed to update session {}: {}", sessionId, e.getMessage());
+            return false;
+        }
+        if (updated) {
+            try {
+                redisClient.publish(AUTH_EVENT_PREFIX + sessionId, state.name());
+            } catch (Exception e) {
+                // Subscribers still see the state when they next read the session
+                log.error("Failed to publish state of session {}: {}", sessionId, e.getMessage());
+            }
         }
+        return updated;
+    }
+
+    @Override
+    public IRedisClient.Subscription subscribeAuthSession(String sessionId, Consumer<AuthSession.State> listener) {
+        return redisClient.subscribe(AUTH_EVENT_PREFIX + sessionId,
+                message -> listener.accept(AuthSession.State.valueOf(message)));
     }
 
     @Override
@@ -74,91 +260,207 @@ public class OidcSessionStore implements IOidcSessionStore {
     }
 
     @Override
-    public void storeCode(String code, UserInfo user, com.example.oidc.dto.PkceData pkceData) {
+    public void storeCode(String code, UserInfo user, PkceData pkceData) {
         try {
-            redisClient.setObject(CODE_PREFIX + code, user);
-            if (pkceData != null) {
-                redisClient.setObject(PKCE_PREFIX + code, pkceData);
-            }
+            writeCode(code, user, pkceData);
         } catch (Exception e) {
             log.error("Failed to store code {}: {}", code, e.getMessage());
         }
     }
 
     @Override
-    public com.example.oidc.dto.PkceData getPkceDataByCode(String code) {
+    public boolean finalizeSession(AuthMethod method, String sessionId, String code, UserInfo user) {
+        Map<String, String> fields;
         try {
-            return redisClient.getObject(PKCE_PREFIX + code, com.example.oidc.dto.PkceData.class);
+            // Taking the session decides which caller gets to issue a code
+            fields = redisClient.getAndDeleteHash(AUTH_SESSION_PREFIX + sessionId);
         } catch (Exception e) {
-            log.error("Failed to get PKCE data for code {}: {}", code, e.getMessage());
-            return null;
+            log.error("Failed to store code {}: {}", code, e.getMessage());
+            return false;
+        }
+        AuthSession session = AuthSession.fromFields(fields);
+        if (session == null) {
+            log.warn("{} session {} was already completed or has expired", method, sessionId);
+            return false;
+        }
+        try {
+            writeCode(code, user, session.getPkceData());
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to store code {}: {}", code, e.getMessage());
+            restoreSession(sessionId, session.getMethod(), fields);
+            return false;
         }
     }
 
-    @Override
-    public void storeToken(String token, UserInfo user) {
+    // The session and the code may live on different shards, so taking one and
+    // writing the other cannot be one script. Instead a session whose code
+    // could not be written is put back, so the check can be retried.
+    private void restoreSession(String sessionId, AuthMethod method, Map<String, String> fields) {
         try {
-            redisClient.setObject(TOKEN_PREFIX + token, user);
+            redisClient.setHash(AUTH_SESSION_PREFIX + sessionId, fields, ttlPolicy.sessionSeconds(method),
+                    TimeUnit.SECONDS);
         } catch (Exception e) {
-            log.error("Failed to store token {}: {}", token, e.getMessage());
+            log.error("Failed to restore {} session {}: {}", method, sessionId, e.getMessage());
         }
     }
 
+    // Certificate and code in one round trip
+    private void writeCode(String code, UserInfo user, PkceData pkceData) {
+        UserInfo stored = detachCertificate(user);
+        redisClient.executeBatch(codeWrites(code, user, stored, pkceData));
+        cacheCertificate(user, stored);
+    }
+
+    private Consumer<IRedisBatch> codeWrites(String code, UserInfo user, UserInfo stored, PkceData pkceData) {
+        return batch -> {
+            storeCertificate(batch, user, stored);
+            batch.setObject(CODE_PREFIX + code, new AuthorizationCode(stored, pkceData),
+                    ttlPolicy.codeSeconds(), TimeUnit.SECONDS);
+        };
+    }
+
     @Override
-    public UserInfo getUserByCode(String code) {
-        String json;
+    public AuthorizationCode consumeCode(String code) {
         try {
-            json = redisClient.getValue(CODE_PREFIX + code);
+            return redisClient.getAndDeleteObject(CODE_PREFIX + code, AuthorizationCode.class);
         } catch (Exception e) {
-            log.error("Failed to fetch code {}: {}", code, e.getMessage());
+            log.error("Failed to redeem code {}: {}", code, e.getMessage());
             return null;
         }
-        if (json == null)
-            return null;
+    }
+
+    @Override
+    public void storeToken(String token, UserInfo user) {
         try {
-            return objectMapper.readValue(json, UserInfo.class);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to deserialize UserInfo for code {}: {}", code, e.getMessage());
-            return null;
+            UserInfo stored = detachCertificate(user);
+            redisClient.executeBatch(tokenWrites(token, user, stored));
+            cacheCertificate(user, stored);
+            tokenCache.put(token, stored);
+        } catch (Exception e) {
+            log.error("Failed to store token {}: {}", tokenKey(token), e.getMessage());
+        }
+    }
+
+    private Consumer<IRedisBatch> tokenWrites(String token, UserInfo user, UserInfo stored) {
+        return batch -> {
+            storeCertificate(batch, user, stored);
+            batch.setObject(tokenKey(token), stored, ttlPolicy.tokenSeconds(token), TimeUnit.SECONDS);
+        };
+    }
+
+    @Override
+    public void removeToken(String token) {
+        tokenCache.invalidate(token);
+        try {
+            redisClient.delete(tokenKey(token));
+        } catch (Exception e) {
+            log.error("Failed to remove token {}: {}", tokenKey(token), e.getMessage());
         }
     }
 
     @Override
     public UserInfo getUserByToken(String token) {
-        String json;
+        // Misses (unknown or expired tokens) are not cached and go to Redis each time
+        return tokenCache.get(token, this::loadUserByToken);
+    }
+
+    private UserInfo loadUserByToken(String token) {
+        String key = tokenKey(token);
         try {
-            json = redisClient.getValue(TOKEN_PREFIX + token);
+            // Hot read path; a replica may serve it
+            return redisClient.getObjectFromReplica(key, UserInfo.class);
         } catch (Exception e) {
-            log.error("Failed to fetch token {}: {}", token, e.getMessage());
+            log.error("Failed to fetch token {}: {}", key, e.getMessage());
             return null;
         }
-        if (json == null)
-            return null;
-        try {
-            return objectMapper.readValue(json, UserInfo.class);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to deserialize UserInfo for token {}: {}", token, e.getMessage());
+    }
+
+    @Override
+    public String getCertificate(String fingerprint) {
+        if (fingerprint == null) {
             return null;
         }
+        return certCache.get(fingerprint, fp -> {
+            try {
+                return redisClient.getAndExpire(CERT_PREFIX + fp, certTtlSeconds, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.error("Failed to fetch certificate {}: {}", fp, e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> storeAuthSessionAsync(String sessionId, AuthSession session) {
+        return asyncRedisClient
+                .executeBatch(batch -> batch.setHash(AUTH_SESSION_PREFIX + sessionId, session.toFields(),
+                        ttlPolicy.sessionSeconds(session.getMethod()), TimeUnit.SECONDS))
+                .exceptionally(e -> {
+                    log.error("Failed to store {} session {}: {}", session.getMethod(), sessionId, e.getMessage());
+                    return null;
+                });
     }
 
     @Override
-    public void storeIdCardSession(String sessionId, IdCardSession session) {
-        // Store in Redis or in-memory map as appropriate for your implementation
-        // Example for in-memory map:
-        // idCardSessionMap.put(sessionId, session);
+    public CompletionStage<Boolean> finalizeSessionAsync(AuthMethod method, String sessionId, String code,
+            UserInfo user) {
+        return asyncRedisClient.getAndDeleteHash(AUTH_SESSION_PREFIX + sessionId)
+                .thenCompose(fields -> {
+                    AuthSession session = AuthSession.fromFields(fields);
+                    if (session == null) {
+                        log.warn("{} session {} was already completed or has expired", method, sessionId);
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    UserInfo stored = detachCertificate(user);
+                    return asyncRedisClient.executeBatch(codeWrites(code, user, stored, session.getPkceData()))
+                            .thenApply(written -> {
+                                cacheCertificate(user, stored);
+                                return true;
+                            })
+                            .exceptionallyCompose(e -> {
+                                log.error("Failed to store code {}: {}", code, e.getMessage());
+                                return restoreSessionAsync(sessionId, session.getMethod(), fields)
+                                        .thenApply(restored -> false);
+                            });
+                })
+                .exceptionally(e -> {
+                    log.error("Failed to store code {}: {}", code, e.getMessage());
+                    return false;
+                });
+    }
 
-        // If using RedisClient:
-        redisClient.setObject(IDCARD_SESSION_PREFIX + sessionId, session);
+    private CompletionStage<Void> restoreSessionAsync(String sessionId, AuthMethod method,
+            Map<String, String> fields) {
+        return asyncRedisClient
+                .executeBatch(batch -> batch.setHash(AUTH_SESSION_PREFIX + sessionId, fields,
+                        ttlPolicy.sessionSeconds(method), TimeUnit.SECONDS))
+                .exceptionally(e -> {
+                    log.error("Failed to restore {} session {}: {}", method, sessionId, e.getMessage());
+                    return null;
+                });
     }
 
     @Override
-    public IdCardSession getIdCardSession(String sessionId) {
-        try {
-            return redisClient.getObject(IDCARD_SESSION_PREFIX + sessionId, IdCardSession.class);
-        } catch (Exception e) {
-            log.error("Failed to get IdCard session {}: {}", sessionId, e.getMessage());
-            return null;
-        }
+    public CompletionStage<AuthorizationCode> consumeCodeAsync(String code) {
+        return asyncRedisClient.getAndDeleteObject(CODE_PREFIX + code, AuthorizationCode.class)
+                .exceptionally(e -> {
+                    log.error("Failed to redeem code {}: {}", code, e.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public CompletionStage<Void> storeTokenAsync(String token, UserInfo user) {
+        UserInfo stored = detachCertificate(user);
+        return asyncRedisClient.executeBatch(tokenWrites(token, user, stored))
+                .thenRun(() -> {
+                    cacheCertificate(user, stored);
+                    tokenCache.put(token, stored);
+                })
+                .exceptionally(e -> {
+                    log.error("Failed to store token {}: {}", tokenKey(token), e.getMessage());
+                    return null;
+                });
     }
-}
\ No newline at end of file
+}
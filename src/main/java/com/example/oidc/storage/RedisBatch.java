@@ -0,0 +1,81 @@
+package com.example.oidc.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations queued on an {@link IRedisBatch}, in the order they were added.
+ */
+class RedisBatch implements IRedisBatch {
+
+    enum Kind {
+        SET_VALUE, SET_OBJECT, SET_HASH, DELETE
+    }
+
+    // object holds the fields of SET_HASH
+    record Operation(Kind kind, String key, String value, Object object, long expiration, TimeUnit timeUnit) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> fields() {
+            return (Map<String, String>) object;
+        }
+
+        void queueOn(IRedisBatch batch) {
+            switch (kind) {
+                case SET_VALUE -> batch.setValue(key, value, expiration, timeUnit);
+                case SET_OBJECT -> batch.setObject(key, object, expiration, timeUnit);
+                case SET_HASH -> batch.setHash(key, fields(), expiration, timeUnit);
+                case DELETE -> batch.delete(key);
+            }
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    @Override
+    public IRedisBatch setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        operations.add(new Operation(Kind.SET_VALUE, key, value, null, expiration, timeUnit));
+        return this;
+    }
+
+    @Override
+    public <T> IRedisBatch setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        operations.add(new Operation(Kind.SET_OBJECT, key, null, value, expiration, timeUnit));
+        return this;
+    }
+
+    @Override
+    public IRedisBatch setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit) {
+        operations.add(new Operation(Kind.SET_HASH, key, null, Map.copyOf(fields), expiration, timeUnit));
+        return this;
+    }
+
+    @Override
+    public IRedisBatch delete(String key) {
+        operations.add(new Operation(Kind.DELETE, key, null, null, 0, null));
+        return this;
+    }
+
+    List<Operation> operations() {
+        return operations;
+    }
+
+    /**
+     * Applies the queued operations one by one, for backends where a round
+     * trip costs nothing.
+     */
+    void applyTo(IRedisClient client) {
+        for (Operation operation : operations) {
+            switch (operation.kind()) {
+                case SET_VALUE -> client.setValue(operation.key(), operation.value(), operation.expiration(),
+                        operation.timeUnit());
+                case SET_OBJECT -> client.setObject(operation.key(), operation.object(), operation.expiration(),
+                        operation.timeUnit());
+                case SET_HASH -> client.setHash(operation.key(), operation.fields(), operation.expiration(),
+                        operation.timeUnit());
+                case DELETE -> client.delete(operation.key());
+            }
+        }
+    }
+}
@@ -1,26 +1,102 @@
 package com.example.oidc.storage;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.function.Consumer;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
 
 @Component
+@ConditionalOnProperty(name = "oidc.storage.backend", havingValue = "redis", matchIfMissing = true)
 public class RedisClient implements IRedisClient {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisClient.class);
+    // HSET only while the key exists, so an expired hash doesn't come back without a TTL
+    static final String UPDATE_HASH_SCRIPT = "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end "
+            + "redis.call('HSET', KEYS[1], unpack(ARGV)) return 1";
+    // HGETALL and DEL as one step, like GETDEL for strings
+    static final String GET_AND_DELETE_HASH_SCRIPT = "local fields = redis.call('HGETALL', KEYS[1]) "
+            + "redis.call('DEL', KEYS[1]) return fields";
+    // DEL, HSET and PEXPIRE as one step: no field of an earlier value survives,
+    // readers never see the key missing, and the hash never lives without a TTL.
+    // ARGV[1] is the TTL in millis, the rest are field/value pairs
+    static final String SET_HASH_SCRIPT = "redis.call('DEL', KEYS[1]) "
+            + "if #ARGV > 1 then redis.call('HSET', KEYS[1], unpack(ARGV, 2)) "
+            + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) end return 1";
+    private static final byte[] SET_HASH_SCRIPT_BYTES = SET_HASH_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final RedisScript<Long> UPDATE_HASH = RedisScript.of(UPDATE_HASH_SCRIPT, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> GET_AND_DELETE_HASH = RedisScript.of(GET_AND_DELETE_HASH_SCRIPT,
+            List.class);
     private final StringRedisTemplate redisTemplate;
+    // Objects are stored as codec-encoded bytes, see ObjectCodecRegistry
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    // Reads that tolerate replication lag; the primary unless spring.redis.read-from is set
+    private final RedisTemplate<String, byte[]> replicaBinaryRedisTemplate;
+    // Optional local cache of frequently polled keys (oidc.storage.tracking.enabled)
+    private final ClientTrackingCache trackingCache;
+    private final ObjectCodecRegistry codecs;
+    private volatile RedisMessageListenerContainer listenerContainer;
 
-    public RedisClient(StringRedisTemplate redisTemplate) {
+    public RedisClient(StringRedisTemplate redisTemplate, RedisTemplate<String, byte[]> binaryRedisTemplate,
+            ObjectCodecRegistry codecs) {
+        this(redisTemplate, binaryRedisTemplate, binaryRedisTemplate, null, codecs);
+    }
+
+    @Autowired
+    public RedisClient(StringRedisTemplate redisTemplate,
+            @Qualifier("binaryRedisTemplate") RedisTemplate<String, byte[]> binaryRedisTemplate,
+            @Qualifier("replicaBinaryRedisTemplate") ObjectProvider<RedisTemplate<String, byte[]>> replicaTemplate,
+            ObjectProvider<ClientTrackingCache> trackingCache,
+            ObjectCodecRegistry codecs) {
+        this(redisTemplate, binaryRedisTemplate, replicaTemplate.getIfAvailable(() -> binaryRedisTemplate),
+                trackingCache.getIfAvailable(), codecs);
+    }
+
+    private RedisClient(StringRedisTemplate redisTemplate, RedisTemplate<String, byte[]> binaryRedisTemplate,
+            RedisTemplate<String, byte[]> replicaBinaryRedisTemplate, ClientTrackingCache trackingCache,
+            ObjectCodecRegistry codecs) {
         this.redisTemplate = redisTemplate;
+        this.binaryRedisTemplate = binaryRedisTemplate;
+        this.replicaBinaryRedisTemplate = replicaBinaryRedisTemplate;
+        this.trackingCache = trackingCache;
+        this.codecs = codecs;
+    }
+
+    // Drops a cached copy of a key this node is about to change
+    private void evictTracked(String key) {
+        if (trackingCache != null) {
+            trackingCache.evict(key);
+        }
     }
 
     @Override
     public void setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        evictTracked(key);
         try {
             redisTemplate.opsForValue().set(key, value, expiration, timeUnit);
         } catch (RedisConnectionFailureException e) {
@@ -53,8 +129,38 @@ public class RedisClient implements IRedisClient {
         }
     }
 
+    @Override
+    public String getAndDelete(String key) {
+        evictTracked(key);
+        try {
+            return redisTemplate.opsForValue().getAndDelete(key);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve and delete key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving and deleting value from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve and delete value from Redis", e);
+        }
+    }
+
+    @Override
+    public String getAndExpire(String key, long expiration, TimeUnit timeUnit) {
+        try {
+            return redisTemplate.opsForValue().getAndExpire(key, Duration.ofMillis(timeUnit.toMillis(expiration)));
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve value for key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving value from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve value from Redis", e);
+        }
+    }
+
     @Override
     public void delete(String key) {
+        evictTracked(key);
         try {
             redisTemplate.delete(key);
         } catch (RedisConnectionFailureException e) {
@@ -67,40 +173,352 @@ public class RedisClient implements IRedisClient {
         }
     }
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-
     @Override
     public <T> void setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        byte[] data;
         try {
-            String json = objectMapper.writeValueAsString(value);
-            setValue(key, json, expiration, timeUnit);
-        } catch (JsonProcessingException e) {
+            data = codecs.encode(value);
+        } catch (IOException e) {
             logger.error("Failed to serialize object for key: {}", key, e);
             throw new RuntimeException("Failed to serialize object", e);
         }
+        try {
+            evictTracked(key);
+            binaryRedisTemplate.opsForValue().set(key, data, expiration, timeUnit);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to store value for key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while storing value in Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to store value in Redis", e);
+        }
     }
 
     @Override
     public <T> void setObject(String key, T value) {
+        long defaultExpiration = 300; // Default expiration time in seconds
+        setObject(key, value, defaultExpiration, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public <T> T getObject(String key, Class<T> valueType) {
+        if (trackingCache != null && trackingCache.covers(key)) {
+            try {
+                return decode(key, trackingCache.get(key), valueType);
+            } catch (RuntimeException e) {
+                logger.warn("Tracked read failed for key: {}, reading directly: {}", key, e.getMessage());
+            }
+        }
+        byte[] data;
         try {
-            String json = objectMapper.writeValueAsString(value);
-            setValue(key, json); // Use default expiration
-        } catch (JsonProcessingException e) {
-            logger.error("Failed to serialize object for key: {}", key, e);
-            throw new RuntimeException("Failed to serialize object", e);
+            data = binaryRedisTemplate.opsForValue().get(key);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve value for key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving value from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve value from Redis", e);
         }
+        return decode(key, data, valueType);
     }
 
     @Override
-    public <T> T getObject(String key, Class<T> valueType) {
+    public <T> T getObjectFromReplica(String key, Class<T> valueType) {
+        if (replicaBinaryRedisTemplate == binaryRedisTemplate) {
+            return getObject(key, valueType);
+        }
+        byte[] data;
         try {
-            String json = getValue(key);
-            if (json == null)
-                return null;
-            return objectMapper.readValue(json, valueType);
-        } catch (JsonProcessingException e) {
+            data = replicaBinaryRedisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            // Replicas are optional; the primary still has the value
+            logger.warn("Replica read failed for key: {}, reading from the primary: {}", key, e.getMessage());
+            return getObject(key, valueType);
+        }
+        // Not replicated yet, or really missing
+        return data != null ? decode(key, data, valueType) : getObject(key, valueType);
+    }
+
+    @Override
+    public <T> T getAndDeleteObject(String key, Class<T> valueType) {
+        evictTracked(key);
+        byte[] data;
+        try {
+            data = binaryRedisTemplate.opsForValue().getAndDelete(key);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve and delete key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving and deleting value from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve and delete value from Redis", e);
+        }
+        return decode(key, data, valueType);
+    }
+
+    @Override
+    public void setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit) {
+        executeBatch(batch -> batch.setHash(key, fields, expiration, timeUnit));
+    }
+
+    @Override
+    public Map<String, String> getHash(String key) {
+        if (trackingCache != null && trackingCache.covers(key)) {
+            try {
+                return trackingCache.getHash(key);
+            } catch (RuntimeException e) {
+                logger.warn("Tracked read failed for key: {}, reading directly: {}", key, e.getMessage());
+            }
+        }
+        try {
+            Map<String, String> fields = redisTemplate.<String, String>opsForHash().entries(key);
+            return fields.isEmpty() ? null : fields;
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve hash for key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving hash from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve hash from Redis", e);
+        }
+    }
+
+    @Override
+    public boolean updateHash(String key, Map<String, String> fields) {
+        evictTracked(key);
+        List<String> args = new ArrayList<>(fields.size() * 2);
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        try {
+            Long updated = redisTemplate.execute(UPDATE_HASH, List.of(key), args.toArray());
+            return updated != null && updated == 1;
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to update hash for key: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while updating hash in Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to update hash in Redis", e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getAndDeleteHash(String key) {
+        evictTracked(key);
+        List<?> reply;
+        try {
+            reply = redisTemplate.execute(GET_AND_DELETE_HASH, List.of(key));
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve and delete hash: {}", key, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving and deleting hash from Redis for key: {}", key, e);
+            throw new RuntimeException("Failed to retrieve and delete hash from Redis", e);
+        }
+        return toHash(reply);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to publish to channel: {}", channel, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while publishing to Redis channel: {}", channel, e);
+            throw new RuntimeException("Failed to publish to Redis", e);
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String channel, Consumer<String> listener) {
+        MessageListener messageListener = (message, pattern) -> listener
+                .accept(new String(message.getBody(), StandardCharsets.UTF_8));
+        ChannelTopic topic = new ChannelTopic(channel);
+        try {
+            RedisMessageListenerContainer container = listenerContainer();
+            container.addMessageListener(messageListener, topic);
+            return () -> container.removeMessageListener(messageListener, topic);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to subscribe to channel: {}", channel, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while subscribing to Redis channel: {}", channel, e);
+            throw new RuntimeException("Failed to subscribe to Redis", e);
+        }
+    }
+
+    // All subscriptions share one pub/sub connection, opened on first use so
+    // the application starts while Redis is down
+    private RedisMessageListenerContainer listenerContainer() {
+        RedisMessageListenerContainer current = listenerContainer;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (listenerContainer == null) {
+                RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+                container.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+                container.afterPropertiesSet();
+                container.start();
+                listenerContainer = container;
+            }
+            return listenerContainer;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                logger.warn("Failed to close Redis subscriptions: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Converts a flat field/value list (an HGETALL reply from a script) to a
+     * map; null if empty, like a missing key.
+     */
+    static Map<String, String> toHash(List<?> reply) {
+        if (reply == null || reply.isEmpty()) {
+            return null;
+        }
+        Map<String, String> fields = new HashMap<>(reply.size());
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            fields.put(asString(reply.get(i)), asString(reply.get(i + 1)));
+        }
+        return fields;
+    }
+
+    private static String asString(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : (String) value;
+    }
+
+    private <T> T decode(String key, byte[] data, Class<T> valueType) {
+        if (data == null)
+            return null;
+        try {
+            return codecs.decode(data, valueType);
+        } catch (IOException e) {
             logger.error("Failed to deserialize object for key: {}", key, e);
             throw new RuntimeException("Failed to deserialize object", e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            return values != null ? values : new ArrayList<>();
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve values for keys: {}", keys, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving values from Redis for keys: {}", keys, e);
+            throw new RuntimeException("Failed to retrieve values from Redis", e);
+        }
+    }
+
+    @Override
+    public <T> List<T> multiGetObjects(List<String> keys, Class<T> valueType) {
+        List<byte[]> data;
+        try {
+            data = binaryRedisTemplate.opsForValue().multiGet(keys);
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to retrieve values for keys: {}", keys, e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while retrieving values from Redis for keys: {}", keys, e);
+            throw new RuntimeException("Failed to retrieve values from Redis", e);
+        }
+        List<T> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(decode(keys.get(i), data != null ? data.get(i) : null, valueType));
+        }
+        return values;
+    }
+
+    @Override
+    public void executeBatch(Consumer<IRedisBatch> writes) {
+        RedisBatch batch = new RedisBatch();
+        writes.accept(batch);
+        List<RedisBatch.Operation> operations = batch.operations();
+        if (operations.isEmpty()) {
+            return;
+        }
+        // Encode everything up front so a serialization error sends nothing
+        List<byte[]> keys = new ArrayList<>(operations.size());
+        List<byte[]> values = new ArrayList<>(operations.size());
+        for (RedisBatch.Operation operation : operations) {
+            evictTracked(operation.key());
+            keys.add(operation.key().getBytes(StandardCharsets.UTF_8));
+            switch (operation.kind()) {
+                case SET_VALUE -> values.add(operation.value().getBytes(StandardCharsets.UTF_8));
+                case SET_OBJECT -> {
+                    try {
+                        values.add(codecs.encode(operation.object()));
+                    } catch (IOException e) {
+                        logger.error("Failed to serialize object for key: {}", operation.key(), e);
+                        throw new RuntimeException("Failed to serialize object", e);
+                    }
+                }
+                case SET_HASH -> values.add(null);
+                case DELETE -> values.add(null);
+            }
+        }
+        try {
+            // One pipeline, written to the socket in a single flush (see RedisConfig)
+            binaryRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < operations.size(); i++) {
+                    RedisBatch.Operation operation = operations.get(i);
+                    if (operation.kind() == RedisBatch.Kind.DELETE) {
+                        connection.keyCommands().del(keys.get(i));
+                    } else if (operation.kind() == RedisBatch.Kind.SET_HASH) {
+                        connection.scriptingCommands().eval(SET_HASH_SCRIPT_BYTES, ReturnType.INTEGER, 1,
+                                setHashArguments(keys.get(i), operation));
+                    } else {
+                        connection.stringCommands().set(keys.get(i), values.get(i),
+                                Expiration.from(operation.expiration(), operation.timeUnit()),
+                                RedisStringCommands.SetOption.upsert());
+                    }
+                }
+                return null;
+            });
+        } catch (RedisConnectionFailureException e) {
+            logger.error("Failed to connect to Redis server. Unable to execute batch of {} writes",
+                    operations.size(), e);
+            throw new RuntimeException(
+                    "Redis connection failed. Please check if Redis server is running and accessible.", e);
+        } catch (Exception e) {
+            logger.error("Unexpected error while executing batch of {} writes in Redis", operations.size(), e);
+            throw new RuntimeException("Failed to execute batch in Redis", e);
+        }
+    }
+
+    // Key, TTL in millis, then the fields and values, for SET_HASH_SCRIPT
+    private static byte[][] setHashArguments(byte[] key, RedisBatch.Operation operation) {
+        byte[][] arguments = new byte[2 + operation.fields().size() * 2][];
+        arguments[0] = key;
+        arguments[1] = Long.toString(operation.timeUnit().toMillis(operation.expiration()))
+                .getBytes(StandardCharsets.UTF_8);
+        int i = 2;
+        for (Map.Entry<String, String> field : operation.fields().entrySet()) {
+            arguments[i++] = field.getKey().getBytes(StandardCharsets.UTF_8);
+            arguments[i++] = field.getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.oidc.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+
+/**
+ * {@link IAsyncRedisClient} for the sharded backend: one Lettuce async
+ * connection per shard, with keys placed exactly like
+ * {@link ShardedRedisClient} places them.
+ */
+public class ShardedAsyncRedisClient implements IAsyncRedisClient {
+
+    private final ShardedRedisClient placement;
+    private final List<LettuceAsyncRedisClient> shards;
+
+    public ShardedAsyncRedisClient(ShardedRedisClient placement, ObjectCodecRegistry codecs) {
+        this.placement = placement;
+        this.shards = new ArrayList<>();
+        for (LettuceConnectionFactory factory : placement.getConnectionFactories()) {
+            shards.add(new LettuceAsyncRedisClient(factory, codecs));
+        }
+    }
+
+    public void shutdown() {
+        shards.forEach(LettuceAsyncRedisClient::shutdown);
+    }
+
+    private LettuceAsyncRedisClient shard(String key) {
+        return shards.get(placement.shardFor(key));
+    }
+
+    @Override
+    public CompletionStage<Void> setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        return shard(key).setValue(key, value, expiration, timeUnit);
+    }
+
+    @Override
+    public CompletionStage<String> getValue(String key) {
+        return shard(key).getValue(key);
+    }
+
+    @Override
+    public CompletionStage<String> getAndDelete(String key) {
+        return shard(key).getAndDelete(key);
+    }
+
+    @Override
+    public CompletionStage<Void> delete(String key) {
+        return shard(key).delete(key);
+    }
+
+    @Override
+    public <T> CompletionStage<Void> setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        return shard(key).setObject(key, value, expiration, timeUnit);
+    }
+
+    @Override
+    public <T> CompletionStage<T> getObject(String key, Class<T> valueType) {
+        return shard(key).getObject(key, valueType);
+    }
+
+    @Override
+    public <T> CompletionStage<T> getAndDeleteObject(String key, Class<T> valueType) {
+        return shard(key).getAndDeleteObject(key, valueType);
+    }
+
+    @Override
+    public CompletionStage<Map<String, String>> getAndDeleteHash(String key) {
+        return shard(key).getAndDeleteHash(key);
+    }
+
+    @Override
+    public CompletionStage<Void> executeBatch(Consumer<IRedisBatch> writes) {
+        RedisBatch batch = new RedisBatch();
+        writes.accept(batch);
+        List<List<RedisBatch.Operation>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (RedisBatch.Operation operation : batch.operations()) {
+            byShard.get(placement.shardFor(operation.key())).add(operation);
+        }
+        // All shards are written concurrently
+        List<CompletableFuture<Void>> replies = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            List<RedisBatch.Operation> operations = byShard.get(i);
+            if (!operations.isEmpty()) {
+                replies.add(shards.get(i)
+                        .executeBatch(shardBatch -> operations.forEach(operation -> operation.queueOn(shardBatch)))
+                        .toCompletableFuture());
+            }
+        }
+        return CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new));
+    }
+}
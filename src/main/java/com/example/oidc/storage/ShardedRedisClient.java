@@ -0,0 +1,224 @@
+package com.example.oidc.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.util.ConsistentHashRing;
+
+/**
+ * {@link IRedisClient} over several standalone Redis servers
+ * (oidc.storage.backend=sharded), as a cheaper alternative to Redis Cluster.
+ * <p>
+ * Every key is placed on one shard by a consistent-hash ring with virtual
+ * nodes, keyed by the shard's host:port, so adding a shard moves only about
+ * 1/N of the keys and reordering the configuration moves none. Each shard is
+ * an ordinary {@link RedisClient}; multi-key reads and batches are split by
+ * shard and sent as one MGET or pipeline per shard.
+ * <p>
+ * Codes, tokens and sessions are short-lived, so keys that move after a
+ * resharding are simply not found until they would have expired anyway;
+ * re-shard during a quiet period or accept that users in the middle of a
+ * login start over.
+ */
+public class ShardedRedisClient implements IRedisClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedRedisClient.class);
+
+    private final List<LettuceConnectionFactory> connectionFactories;
+    private final ConsistentHashRing<RedisClient> ring;
+
+    /**
+     * @param names               shard names (host:port), used for placement
+     * @param connectionFactories connection factory of each shard, same order;
+     *                            initialized by this client
+     * @param codecs              object codecs
+     * @param virtualNodes        ring points per shard
+     */
+    public ShardedRedisClient(List<String> names, List<LettuceConnectionFactory> connectionFactories,
+            ObjectCodecRegistry codecs, int virtualNodes) {
+        this.connectionFactories = List.copyOf(connectionFactories);
+        List<RedisClient> shards = new ArrayList<>(connectionFactories.size());
+        for (LettuceConnectionFactory factory : connectionFactories) {
+            factory.afterPropertiesSet();
+            StringRedisTemplate stringTemplate = new StringRedisTemplate(factory);
+            RedisTemplate<String, byte[]> binaryTemplate = new RedisTemplate<>();
+            binaryTemplate.setConnectionFactory(factory);
+            binaryTemplate.setKeySerializer(RedisSerializer.string());
+            binaryTemplate.setValueSerializer(RedisSerializer.byteArray());
+            binaryTemplate.afterPropertiesSet();
+            shards.add(new RedisClient(stringTemplate, binaryTemplate, codecs));
+        }
+        this.ring = new ConsistentHashRing<>(shards, names, virtualNodes);
+        logger.info("Sharding Redis keys over {} servers: {} ({} virtual nodes each)", names.size(), names,
+                virtualNodes);
+    }
+
+    public void shutdown() {
+        ring.getNodes().forEach(RedisClient::shutdown);
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    List<LettuceConnectionFactory> getConnectionFactories() {
+        return connectionFactories;
+    }
+
+    // Index of the shard (in configuration order) holding a key
+    int shardFor(String key) {
+        return ring.indexFor(key);
+    }
+
+    private RedisClient shard(String key) {
+        return ring.nodeFor(key);
+    }
+
+    @Override
+    public void setValue(String key, String value, long expiration, TimeUnit timeUnit) {
+        shard(key).setValue(key, value, expiration, timeUnit);
+    }
+
+    @Override
+    public void setValue(String key, String value) {
+        shard(key).setValue(key, value);
+    }
+
+    @Override
+    public String getValue(String key) {
+        return shard(key).getValue(key);
+    }
+
+    @Override
+    public String getAndDelete(String key) {
+        return shard(key).getAndDelete(key);
+    }
+
+    @Override
+    public String getAndExpire(String key, long expiration, TimeUnit timeUnit) {
+        return shard(key).getAndExpire(key, expiration, timeUnit);
+    }
+
+    @Override
+    public void delete(String key) {
+        shard(key).delete(key);
+    }
+
+    @Override
+    public <T> void setObject(String key, T value, long expiration, TimeUnit timeUnit) {
+        shard(key).setObject(key, value, expiration, timeUnit);
+    }
+
+    @Override
+    public <T> void setObject(String key, T value) {
+        shard(key).setObject(key, value);
+    }
+
+    @Override
+    public <T> T getObject(String key, Class<T> valueType) {
+        return shard(key).getObject(key, valueType);
+    }
+
+    @Override
+    public <T> T getAndDeleteObject(String key, Class<T> valueType) {
+        return shard(key).getAndDeleteObject(key, valueType);
+    }
+
+    @Override
+    public void setHash(String key, Map<String, String> fields, long expiration, TimeUnit timeUnit) {
+        shard(key).setHash(key, fields, expiration, timeUnit);
+    }
+
+    @Override
+    public Map<String, String> getHash(String key) {
+        return shard(key).getHash(key);
+    }
+
+    @Override
+    public boolean updateHash(String key, Map<String, String> fields) {
+        return shard(key).updateHash(key, fields);
+    }
+
+    @Override
+    public Map<String, String> getAndDeleteHash(String key) {
+        return shard(key).getAndDeleteHash(key);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        shard(channel).publish(channel, message);
+    }
+
+    @Override
+    public Subscription subscribe(String channel, Consumer<String> listener) {
+        // Placed like a key, so publisher and subscribers meet on one shard
+        return shard(channel).subscribe(channel, listener);
+    }
+
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        String[] values = new String[keys.size()];
+        partition(keys).forEach((shard, positions) -> {
+            List<String> found = ring.getNodes().get(shard).multiGet(keysAt(keys, positions));
+            for (int i = 0; i < positions.size(); i++) {
+                values[positions.get(i)] = found.isEmpty() ? null : found.get(i);
+            }
+        });
+        return Arrays.asList(values);
+    }
+
+    @Override
+    public <T> List<T> multiGetObjects(List<String> keys, Class<T> valueType) {
+        List<T> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(null);
+        }
+        partition(keys).forEach((shard, positions) -> {
+            List<T> found = ring.getNodes().get(shard).multiGetObjects(keysAt(keys, positions), valueType);
+            for (int i = 0; i < positions.size(); i++) {
+                values.set(positions.get(i), found.get(i));
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public void executeBatch(Consumer<IRedisBatch> writes) {
+        RedisBatch batch = new RedisBatch();
+        writes.accept(batch);
+        Map<Integer, List<RedisBatch.Operation>> byShard = new TreeMap<>();
+        for (RedisBatch.Operation operation : batch.operations()) {
+            byShard.computeIfAbsent(shardFor(operation.key()), s -> new ArrayList<>()).add(operation);
+        }
+        // One pipeline per shard, in shard order
+        byShard.forEach((shard, operations) -> ring.getNodes().get(shard)
+                .executeBatch(shardBatch -> operations.forEach(operation -> operation.queueOn(shardBatch))));
+    }
+
+    // Positions of the keys by shard
+    private Map<Integer, List<Integer>> partition(List<String> keys) {
+        Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byShard.computeIfAbsent(shardFor(keys.get(i)), s -> new ArrayList<>()).add(i);
+        }
+        return byShard;
+    }
+
+    private static List<String> keysAt(List<String> keys, List<Integer> positions) {
+        List<String> selected = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            selected.add(keys.get(position));
+        }
+        return selected;
+    }
+}
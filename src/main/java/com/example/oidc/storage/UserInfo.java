@@ -18,6 +18,7 @@ public class UserInfo {
     private String phoneNumber;
     private String nonce;
     private String cert; // base64 encoded certificate
+    private String certFingerprint; // base64url SHA-256 of the certificate, see IOidcSessionStore#getCertificate
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
     @JsonSerialize(using = LocalDateSerializer.class)
@@ -103,4 +104,25 @@ public class UserInfo {
     public void setCert(String cert) {
         this.cert = cert;
     }
-}
\ No newline at end of file
+
+    public String getCertFingerprint() {
+        return certFingerprint;
+    }
+
+    public void setCertFingerprint(String certFingerprint) {
+        this.certFingerprint = certFingerprint;
+    }
+
+    /**
+     * Returns a copy of this user with the certificate replaced by its
+     * fingerprint, for storing alongside codes and tokens.
+     *
+     * @param fingerprint the certificate fingerprint
+     * @return the copy without the certificate
+     */
+    public UserInfo withCertFingerprint(String fingerprint) {
+        UserInfo copy = new UserInfo(sub, givenName, surname, country, dateOfBirth, phoneNumber, nonce);
+        copy.setCertFingerprint(fingerprint);
+        return copy;
+    }
+}
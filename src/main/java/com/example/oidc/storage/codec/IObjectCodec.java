@@ -0,0 +1,52 @@
+package com.example.oidc.storage.codec;
+
+import java.io.IOException;
+
+/**
+ * Serialization format for objects stored through
+ * {@link com.example.oidc.storage.IRedisClient}.
+ * Implementations are registered as beans and picked up by
+ * {@link ObjectCodecRegistry}; the format id is written in front of every
+ * stored value so values in different formats can live side by side while a
+ * keyspace is migrated.
+ */
+public interface IObjectCodec {
+
+        /**
+         * Returns the format id written as the first byte of every value encoded
+         * with this codec. Must be unique and must never change once values have
+         * been stored with it.
+         *
+         * @return the format id
+         */
+        byte getFormatId();
+
+        /**
+         * Returns the name used to select this codec in configuration.
+         *
+         * @return the codec name, e.g. "json"
+         */
+        String getName();
+
+        /**
+         * Encodes an object.
+         *
+         * @param value the object to encode
+         * @return the encoded bytes, without the format id
+         * @throws IOException if the object cannot be encoded
+         */
+        byte[] encode(Object value) throws IOException;
+
+        /**
+         * Decodes an object.
+         *
+         * @param <T>       the type of the object
+         * @param data      the buffer holding the encoded object
+         * @param offset    the start of the encoded object in the buffer
+         * @param length    the length of the encoded object
+         * @param valueType the class type of the object
+         * @return the decoded object
+         * @throws IOException if the data cannot be decoded
+         */
+        <T> T decode(byte[] data, int offset, int length, Class<T> valueType) throws IOException;
+}
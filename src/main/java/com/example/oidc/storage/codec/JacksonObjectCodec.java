@@ -0,0 +1,34 @@
+package com.example.oidc.storage.codec;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Base for Jackson based codecs. Readers and writers are built once per type
+ * and reused, so the per-call cost is just the (de)serialization itself.
+ */
+public abstract class JacksonObjectCodec implements IObjectCodec {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    protected JacksonObjectCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return writers.computeIfAbsent(value.getClass(), objectMapper::writerFor).writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> valueType) throws IOException {
+        return readers.computeIfAbsent(valueType, objectMapper::readerFor).readValue(data, offset, length);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.oidc.storage.codec;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON codec. Values stored before format ids were introduced are plain JSON
+ * and are read with this codec as well.
+ */
+@Component
+public class JsonObjectCodec extends JacksonObjectCodec {
+
+    public static final byte FORMAT_ID = 0x01;
+
+    public JsonObjectCodec() {
+        super(new ObjectMapper());
+    }
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.oidc.storage.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes stored objects with the configured codec and decodes them with
+ * whichever codec wrote them. Every encoded value starts with the writing
+ * codec's format id; values that start with '{' predate format ids and are read
+ * as JSON. Switching oidc.storage.codec therefore only affects new writes, and
+ * existing values stay readable until they expire.
+ */
+@Component
+public class ObjectCodecRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectCodecRegistry.class);
+
+    private final IObjectCodec[] codecsByFormatId = new IObjectCodec[256];
+    private final IObjectCodec writeCodec;
+    private final IObjectCodec legacyCodec;
+
+    @Autowired
+    public ObjectCodecRegistry(List<IObjectCodec> codecs, @Value("${oidc.storage.codec:json}") String codecName) {
+        IObjectCodec selected = null;
+        IObjectCodec json = null;
+        for (IObjectCodec codec : codecs) {
+            int id = codec.getFormatId() & 0xFF;
+            if (id == '{' || codecsByFormatId[id] != null) {
+                throw new IllegalStateException("Invalid or duplicate codec format id " + id + " for "
+                        + codec.getName());
+            }
+            codecsByFormatId[id] = codec;
+            if (codec.getName().equalsIgnoreCase(codecName)) {
+                selected = codec;
+            }
+            if (codec.getFormatId() == JsonObjectCodec.FORMAT_ID) {
+                json = codec;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalStateException("Unknown storage codec: " + codecName);
+        }
+        this.writeCodec = selected;
+        this.legacyCodec = json;
+        logger.info("Storing objects with the {} codec", selected.getName());
+    }
+
+    /**
+     * Encodes an object with the configured codec.
+     *
+     * @param value the object to encode
+     * @return the format id followed by the encoded object
+     * @throws IOException if the object cannot be encoded
+     */
+    public byte[] encode(Object value) throws IOException {
+        byte[] payload = writeCodec.encode(value);
+        byte[] data = new byte[payload.length + 1];
+        data[0] = writeCodec.getFormatId();
+        System.arraycopy(payload, 0, data, 1, payload.length);
+        return data;
+    }
+
+    /**
+     * Decodes an object written by any registered codec.
+     *
+     * @param <T>       the type of the object
+     * @param data      the stored value
+     * @param valueType the class type of the object
+     * @return the decoded object
+     * @throws IOException if the format is unknown or the data cannot be decoded
+     */
+    public <T> T decode(byte[] data, Class<T> valueType) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("Empty value");
+        }
+        if (data[0] == '{' && legacyCodec != null) {
+            return legacyCodec.decode(data, 0, data.length, valueType);
+        }
+        IObjectCodec codec = codecsByFormatId[data[0] & 0xFF];
+        if (codec == null) {
+            throw new IOException("Unknown codec format id " + (data[0] & 0xFF));
+        }
+        return codec.decode(data, 1, data.length - 1, valueType);
+    }
+
+    public IObjectCodec getWriteCodec() {
+        return writeCodec;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.oidc.storage.codec;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Smile (binary JSON) codec: same data model as JSON, smaller and faster to
+ * parse.
+ */
+@Component
+public class SmileObjectCodec extends JacksonObjectCodec {
+
+    public static final byte FORMAT_ID = 0x02;
+
+    public SmileObjectCodec() {
+        super(new ObjectMapper(new SmileFactory()));
+    }
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public String getName() {
+        return "smile";
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.oidc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent-hash ring with virtual nodes for spreading keys over a fixed set
+ * of nodes.
+ * <p>
+ * Each node is hashed onto the ring at {@code virtualNodes} points derived from
+ * its name, and a key belongs to the first point at or after the key's hash.
+ * Placement depends only on node names, not their order, and adding or
+ * removing a node only moves the keys of the points it gains or loses (about
+ * 1/N of them). More virtual nodes even out the share of each node at the cost
+ * of a larger ring; 160 keeps the spread within a few percent.
+ * <p>
+ * The ring is immutable; build a new one when the nodes change.
+ *
+ * @param <T> the node type
+ */
+public class ConsistentHashRing<T> {
+
+    private final List<T> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodes        the nodes
+     * @param names        stable name of each node (e.g. host:port), same order
+     * @param virtualNodes points per node
+     */
+    public ConsistentHashRing(List<T> nodes, List<String> names, int virtualNodes) {
+        if (nodes.isEmpty() || nodes.size() != names.size()) {
+            throw new IllegalArgumentException("Each node needs a name and there must be at least one node");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        if (names.stream().distinct().count() != names.size()) {
+            throw new IllegalArgumentException("Node names must be unique: " + names);
+        }
+        this.nodes = List.copyOf(nodes);
+        int size = nodes.size() * virtualNodes;
+        long[] entries = new long[size];
+        long[][] pairs = new long[size][];
+        int n = 0;
+        for (int node = 0; node < names.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                pairs[n++] = new long[] { hash(names.get(node) + "#" + v), node };
+            }
+        }
+        // Ties (practically never) go to the lower name, independent of input order
+        Arrays.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : names.get((int) a[1]).compareTo(names.get((int) b[1])));
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+        this.points = entries;
+    }
+
+    /**
+     * Returns the node a key belongs to.
+     *
+     * @param key the key
+     * @return the owning node
+     */
+    public T nodeFor(String key) {
+        return nodes.get(indexFor(key));
+    }
+
+    /**
+     * Returns the index (in constructor order) of the node a key belongs to.
+     *
+     * @param key the key
+     * @return the owning node's index
+     */
+    public int indexFor(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    // FNV-1a over the UTF-8 bytes with a murmur3 finalizer, so that keys
+    // differing only in their last characters still land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
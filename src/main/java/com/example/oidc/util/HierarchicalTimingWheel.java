@@ -0,0 +1,142 @@
+package com.example.oidc.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for expiring items in O(1) per schedule and per
+ * tick, however many items are pending.
+ * <p>
+ * Level 0 has one slot per tick; each higher level has slots 64 times as wide
+ * as the level below. An item is placed on the lowest level whose current
+ * rotation still contains its deadline, and is moved down a level each time
+ * the wheel reaches its slot, until it fires from level 0. With the default
+ * four levels, deadlines up to 64^4 ticks ahead are placed directly; later
+ * ones wait in an overflow list that is re-placed once per full rotation.
+ * <p>
+ * The wheel only reports that a deadline passed. Callers keep the
+ * authoritative expiry with the item and re-check it when it fires, so
+ * rescheduling an item doesn't require cancelling its earlier deadline.
+ * All methods are synchronized; they are short and never call out while
+ * holding the lock except to the expiry consumer in {@link #advance}.
+ *
+ * @param <T> the type of the scheduled items
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private record Entry<T>(T item, long deadlineTick) {
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final ArrayDeque<Entry<T>>[][] slots;
+    private final List<Entry<T>> overflow = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HierarchicalTimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.slots = new ArrayDeque[LEVELS][WHEEL_SIZE];
+    }
+
+    /**
+     * Schedules an item. Deadlines that already passed fire on the next tick.
+     *
+     * @param item           the item to report when the deadline passes
+     * @param deadlineMillis the deadline (epoch millis)
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        // Round up so an item never fires before its deadline
+        long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        place(new Entry<>(item, Math.max(deadlineTick, currentTick + 1)));
+        size++;
+    }
+
+    /**
+     * Advances the wheel to the given time and reports every item whose
+     * deadline has passed.
+     *
+     * @param nowMillis the current time (epoch millis)
+     * @param expired   receives the items that are due
+     */
+    public synchronized void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            int index = (int) (currentTick & WHEEL_MASK);
+            ArrayDeque<Entry<T>> due = slots[0][index];
+            if (due != null) {
+                slots[0][index] = null;
+                size -= due.size();
+                for (Entry<T> entry : due) {
+                    expired.accept(entry.item());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of scheduled items, including ones whose item has
+     * since been rescheduled.
+     *
+     * @return the number of pending entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    // Moves the entries of every higher-level slot the wheel just entered one
+    // level down, starting from the top so they can keep falling this tick
+    private void cascade() {
+        int top = 0;
+        while (top < LEVELS && (currentTick & ((1L << (WHEEL_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        if (top == LEVELS && !overflow.isEmpty()) {
+            List<Entry<T>> pending = new ArrayList<>(overflow);
+            overflow.clear();
+            pending.forEach(this::place);
+        }
+        for (int level = Math.min(top, LEVELS - 1); level >= 1; level--) {
+            int index = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            ArrayDeque<Entry<T>> entries = slots[level][index];
+            if (entries != null) {
+                slots[level][index] = null;
+                entries.forEach(this::place);
+            }
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        long deadlineTick = entry.deadlineTick();
+        for (int level = 0; level < LEVELS; level++) {
+            int parentShift = WHEEL_BITS * (level + 1);
+            // Same rotation of the level above: the slot is reached before the
+            // wheel wraps around this level
+            if ((deadlineTick >>> parentShift) == (currentTick >>> parentShift)) {
+                int index = (int) ((deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                ArrayDeque<Entry<T>> slot = slots[level][index];
+                if (slot == null) {
+                    slot = new ArrayDeque<>();
+                    slots[level][index] = slot;
+                }
+                slot.add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.oidc.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Collapses concurrent calls with the same key onto one execution: the first
+ * caller runs the operation and every caller that arrives while it runs gets
+ * the same result (or exception) instead of running it again. Nothing is
+ * cached; a call after the operation finished runs it anew.
+ * <p>
+ * Counts calls in oidc.singleflight.calls, tagged with the name and whether
+ * the call ran the operation (executed) or shared another's (joined).
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter joined;
+
+    /**
+     * @param name          the name of the operation, as a metric tag
+     * @param meterRegistry where the counters are registered
+     */
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.executed = Counter.builder("oidc.singleflight.calls")
+                .description("Calls that ran the operation or shared a concurrent caller's result")
+                .tag("name", name)
+                .tag("result", "executed")
+                .register(meterRegistry);
+        this.joined = Counter.builder("oidc.singleflight.calls")
+                .description("Calls that ran the operation or shared a concurrent caller's result")
+                .tag("name", name)
+                .tag("result", "joined")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the operation, or waits for the one already running for this key.
+     *
+     * @param key       calls with equal keys are collapsed
+     * @param operation the operation
+     * @return the result of the one execution
+     */
+    public V execute(K key, Supplier<V> operation) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            joined.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        executed.increment();
+        try {
+            V result = operation.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
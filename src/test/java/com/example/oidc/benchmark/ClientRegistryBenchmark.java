@@ -0,0 +1,110 @@
+package com.example.oidc.benchmark;
+
+import com.example.oidc.storage.OidcClient;
+import com.example.oidc.storage.OidcClientRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures client resolution in {@link OidcClientRegistry} as the number of
+ * registered clients grows. The indexed lookups used by /authorize and /token
+ * should stay flat; the linear scan over all clients is what
+ * getClientByReturnUri used to do and is kept as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientRegistryBenchmark {
+
+    private static final int REDIRECT_URIS_PER_CLIENT = 3;
+
+    @Param({ "1", "100", "1000", "10000" })
+    public int clientCount;
+
+    private OidcClientRegistry registry;
+    private List<OidcClient> clientList;
+    private String clientId;
+    private String redirectUri;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder json = new StringBuilder("{\"clients\":[");
+        for (int i = 0; i < clientCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"clientId\":\"client-").append(i)
+                    .append("\",\"clientSecret\":\"secret-").append(i)
+                    .append("\",\"scope\":\"openid profile\",\"redirectUri\":[");
+            for (int j = 0; j < REDIRECT_URIS_PER_CLIENT; j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                json.append("\"https://client-").append(i).append(".example.com/callback/").append(j).append('"');
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+
+        Path file = Files.createTempFile("clients", ".json");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, json);
+        registry = new OidcClientRegistry(file.toString());
+
+        clientList = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clientList.add(registry.getClient("client-" + i));
+        }
+        // Worst case for the linear scan: last URI of the last client
+        int last = clientCount - 1;
+        clientId = "client-" + last;
+        redirectUri = "https://client-" + last + ".example.com/callback/" + (REDIRECT_URIS_PER_CLIENT - 1);
+    }
+
+    @Benchmark
+    public OidcClient baselineLinearScan() {
+        for (OidcClient client : clientList) {
+            if (client.getRedirectUris().contains(redirectUri)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public OidcClient getClientByReturnUri() {
+        return registry.getClientByReturnUri(redirectUri);
+    }
+
+    @Benchmark
+    public OidcClient isValidClient() {
+        return registry.isValidClient(clientId, redirectUri);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClientRegistryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
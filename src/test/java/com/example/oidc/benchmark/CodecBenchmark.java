@@ -0,0 +1,132 @@
+package com.example.oidc.benchmark;
+
+import com.example.oidc.dto.PkceData;
+import com.example.oidc.storage.AuthorizationCode;
+import com.example.oidc.storage.UserInfo;
+import com.example.oidc.storage.codec.IObjectCodec;
+import com.example.oidc.storage.codec.JsonObjectCodec;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.storage.codec.SmileObjectCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of the objects kept in Redis with each storage codec,
+ * against the previous approach of a shared ObjectMapper writing JSON strings.
+ * Payload sizes are printed by {@link #main} before the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final ObjectMapper LEGACY_MAPPER = new ObjectMapper();
+    private static final List<String> TYPES = List.of("UserInfo", "AuthorizationCode", "PkceData");
+
+    @Param({ "UserInfo", "AuthorizationCode", "PkceData" })
+    public String type;
+
+    @Param({ "json", "smile" })
+    public String codec;
+
+    private ObjectCodecRegistry registry;
+    private Object value;
+    private Class<?> valueType;
+    private byte[] encoded;
+    private String legacyJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        registry = newRegistry(codec);
+        value = sample(type);
+        valueType = value.getClass();
+        encoded = registry.encode(value);
+        legacyJson = LEGACY_MAPPER.writeValueAsString(value);
+    }
+
+    // Codec-independent: the old RedisClient path
+    @Benchmark
+    public String baselineObjectMapperWrite() throws Exception {
+        return LEGACY_MAPPER.writeValueAsString(value);
+    }
+
+    @Benchmark
+    public Object baselineObjectMapperRead() throws Exception {
+        return LEGACY_MAPPER.readValue(legacyJson, valueType);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return registry.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return registry.decode(encoded, valueType);
+    }
+
+    private static ObjectCodecRegistry newRegistry(String codec) {
+        List<IObjectCodec> codecs = List.of(new JsonObjectCodec(), new SmileObjectCodec());
+        return new ObjectCodecRegistry(codecs, codec);
+    }
+
+    private static Object sample(String type) {
+        PkceData pkce = new PkceData("E9Melhoa2OwvFrEMTJguCHaoeK1t8URWbuGJSstw-cM", "S256");
+        switch (type) {
+            case "UserInfo": {
+                UserInfo user = new UserInfo("38001085718", "JAAK-KRISTJAN", "JÕEORG", "EE",
+                        LocalDate.of(1980, 1, 8), "+37200000766", "n-0S6_WzA2Mj");
+                // Typical authentication certificate size (DER ~1.7 KB)
+                byte[] der = new byte[1700];
+                new Random(42).nextBytes(der);
+                user.setCert(Base64.getEncoder().encodeToString(der));
+                return user;
+            }
+            case "AuthorizationCode": {
+                UserInfo user = new UserInfo("38001085718", "JAAK-KRISTJAN", "JÕEORG", "EE",
+                        LocalDate.of(1980, 1, 8), "+37200000766", "n-0S6_WzA2Mj");
+                user.setCertFingerprint("kO6EEfUJbBKJzqMgb4nB8K0lqKhHm1PUuu2gB2ZmK7w");
+                return new AuthorizationCode(user, pkce);
+            }
+            case "PkceData":
+                return pkce;
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ObjectCodecRegistry json = newRegistry("json");
+        ObjectCodecRegistry smile = newRegistry("smile");
+        System.out.printf("%-16s %8s %8s %8s%n", "payload bytes", "legacy", "json", "smile");
+        for (String type : TYPES) {
+            Object value = sample(type);
+            System.out.printf("%-16s %8d %8d %8d%n", type, LEGACY_MAPPER.writeValueAsBytes(value).length,
+                    json.encode(value).length, smile.encode(value).length);
+        }
+        new Runner(new OptionsBuilder()
+                .include(CodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.oidc.benchmark;
+
+import com.example.oidc.storage.IRedisClient;
+import com.example.oidc.storage.InMemoryRedisClient;
+import com.example.oidc.storage.MappedFileRedisClient;
+import com.example.oidc.storage.RedisClient;
+import com.example.oidc.storage.UserInfo;
+import com.example.oidc.storage.codec.JsonObjectCodec;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.storage.codec.SmileObjectCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * put/get latency of a token record on each storage backend. The redis
+ * backend needs a Redis server on localhost:6379 (REDIS_HOST/REDIS_PORT to
+ * override); run with -p backend=memory,mmap to skip it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBackendBenchmark {
+
+    private static final int KEYS = 10_000;
+
+    @Param({ "memory", "mmap", "redis" })
+    public String backend;
+
+    private IRedisClient client;
+    private LettuceConnectionFactory connectionFactory;
+    private Path dataDir;
+    private UserInfo user;
+    private final AtomicLong counter = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectCodecRegistry codecs = new ObjectCodecRegistry(List.of(new JsonObjectCodec(), new SmileObjectCodec()),
+                "smile");
+        switch (backend) {
+            case "memory":
+                client = new InMemoryRedisClient(codecs, 100, new SimpleMeterRegistry());
+                break;
+            case "mmap":
+                dataDir = Files.createTempDirectory("oidc-store");
+                client = new MappedFileRedisClient(codecs, dataDir.resolve("store.log").toString(), 64, 1000,
+                        new SimpleMeterRegistry());
+                break;
+            case "redis":
+                connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                        System.getenv().getOrDefault("REDIS_HOST", "localhost"),
+                        Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"))));
+                connectionFactory.afterPropertiesSet();
+                connectionFactory.start();
+                StringRedisTemplate stringTemplate = new StringRedisTemplate(connectionFactory);
+                RedisTemplate<String, byte[]> binaryTemplate = new RedisTemplate<>();
+                binaryTemplate.setConnectionFactory(connectionFactory);
+                binaryTemplate.setKeySerializer(RedisSerializer.string());
+                binaryTemplate.setValueSerializer(RedisSerializer.byteArray());
+                binaryTemplate.afterPropertiesSet();
+                client = new RedisClient(stringTemplate, binaryTemplate, codecs);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+
+        user = new UserInfo("38001085718", "JAAK-KRISTJAN", "JÕEORG", "EE", LocalDate.of(1980, 1, 8),
+                "+37200000766", null);
+        user.setCertFingerprint("kO6EEfUJbBKJzqMgb4nB8K0lqKhHm1PUuu2gB2ZmK7w");
+        for (int i = 0; i < KEYS; i++) {
+            client.setObject(key(i), user, 1, TimeUnit.HOURS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (client instanceof InMemoryRedisClient memory) {
+            memory.shutdown();
+        } else if (client instanceof MappedFileRedisClient mmap) {
+            mmap.shutdown();
+            try (var files = Files.list(dataDir)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dataDir);
+        } else if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        client.setObject(key((int) (counter.incrementAndGet() % KEYS)), user, 1, TimeUnit.HOURS);
+    }
+
+    @Benchmark
+    public UserInfo get() {
+        return client.getObject(key((int) (counter.incrementAndGet() % KEYS)), UserInfo.class);
+    }
+
+    private static String key(int i) {
+        return "oidc:token:bench-" + i;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StorageBackendBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.oidc.benchmark;
+
+import com.example.oidc.service.JwtSigningService;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.PrivateKey;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares /token signing as the controller used to do it (new RS256 signer
+ * and header per token, both tokens signed sequentially) against
+ * {@link JwtSigningService} with each supported algorithm. Each operation
+ * issues one access token and one id_token; run with a single benchmark
+ * thread to read the score as token pairs per second per request thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class TokenSigningBenchmark {
+
+    @Param({ "RS256", "ES256", "EdDSA" })
+    public String algorithm;
+
+    private PrivateKey privateKey;
+    private JwtSigningService signingService;
+    private JWSAlgorithm jwsAlgorithm;
+    private JWTClaimsSet accessTokenClaims;
+    private JWTClaimsSet idTokenClaims;
+
+    @Setup
+    public void setUp() throws Exception {
+        RSAKey rsaKey = new RSAKeyGenerator(2048).keyID("springboot").algorithm(JWSAlgorithm.RS256).generate();
+        privateKey = rsaKey.toPrivateKey();
+        jwsAlgorithm = JWSAlgorithm.parse(algorithm);
+        signingService = new JwtSigningService(List.of(
+                rsaKey,
+                new ECKeyGenerator(Curve.P_256).keyIDFromThumbprint(true).algorithm(JWSAlgorithm.ES256).generate(),
+                new OctetKeyPairGenerator(Curve.Ed25519).keyIDFromThumbprint(true).algorithm(JWSAlgorithm.EdDSA)
+                        .generate()),
+                JWSAlgorithm.RS256, 0, 256);
+
+        Date now = new Date();
+        Date exp = new Date(now.getTime() + 3600 * 1000);
+        accessTokenClaims = new JWTClaimsSet.Builder()
+                .issuer("https://localhost:8443")
+                .subject("38001085718")
+                .audience("demo-client-id")
+                .claim("scope", "openid profile email")
+                .expirationTime(exp)
+                .issueTime(now)
+                .build();
+        idTokenClaims = new JWTClaimsSet.Builder()
+                .issuer("https://localhost:8443")
+                .subject("38001085718")
+                .audience("demo-client-id")
+                .claim("name", "JAAK-KRISTJAN")
+                .claim("surname", "JÕEORG")
+                .claim("country", "EE")
+                .claim("nonce", "abc")
+                .expirationTime(exp)
+                .issueTime(now)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        signingService.shutdown();
+    }
+
+    // Algorithm-independent: always the old RS256 code path
+    @Benchmark
+    public String[] baselinePerRequestSigners() throws Exception {
+        JWSHeader accessTokenHeader = new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("springboot").build();
+        SignedJWT accessSignedJWT = new SignedJWT(accessTokenHeader, accessTokenClaims);
+        accessSignedJWT.sign(new RSASSASigner(privateKey));
+
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("springboot").build();
+        SignedJWT signedJWT = new SignedJWT(header, idTokenClaims);
+        signedJWT.sign(new RSASSASigner(privateKey));
+        return new String[] { accessSignedJWT.serialize(), signedJWT.serialize() };
+    }
+
+    @Benchmark
+    public List<String> signingServiceSequential() throws Exception {
+        return List.of(signingService.sign(accessTokenClaims, jwsAlgorithm),
+                signingService.sign(idTokenClaims, jwsAlgorithm));
+    }
+
+    @Benchmark
+    public List<String> signingServiceParallel() throws Exception {
+        return signingService.signAll(List.of(accessTokenClaims, idTokenClaims), jwsAlgorithm);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TokenSigningBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
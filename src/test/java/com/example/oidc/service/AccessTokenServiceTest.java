@@ -0,0 +1,56 @@
+package com.example.oidc.service;
+
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.UserInfo;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AccessTokenServiceTest {
+
+        private IOidcSessionStore oidcSessionStore;
+        private IJwtSigningService jwtSigningService;
+        private AccessTokenService accessTokenService;
+
+        @BeforeEach
+        void setUp() {
+                oidcSessionStore = mock(IOidcSessionStore.class);
+                jwtSigningService = mock(IJwtSigningService.class);
+                accessTokenService = new AccessTokenService(oidcSessionStore, jwtSigningService,
+                                new TokenRevocationList(100));
+                ReflectionTestUtils.setField(accessTokenService, "issuer", "https://issuer");
+                ReflectionTestUtils.setField(accessTokenService, "lifetimeSeconds", 3600L);
+                ReflectionTestUtils.setField(accessTokenService, "stateless", true);
+        }
+
+        @Test
+        void testStatelessTokenOfUserWithoutGivenNameIsResolvedFromClaims() {
+                UserInfo user = new UserInfo("EE38001085718", null, "SURNAME", "EE", null, null, null);
+                JWTClaimsSet claims = accessTokenService.buildClaims(user, "client1", "openid");
+                when(jwtSigningService.verify("token")).thenReturn(claims);
+
+                UserInfo resolved = accessTokenService.resolveUser("token");
+
+                assertNotNull(resolved);
+                assertEquals("EE38001085718", resolved.getSub());
+                assertNull(resolved.getGivenName());
+                assertEquals("SURNAME", resolved.getSurname());
+                verify(oidcSessionStore, never()).getUserByToken(any());
+        }
+
+        @Test
+        void testTokenWithoutUserClaimsIsResolvedFromSessionStore() {
+                ReflectionTestUtils.setField(accessTokenService, "stateless", false);
+                UserInfo user = new UserInfo("EE38001085718", "MARY", "SURNAME", "EE", null, null, null);
+                JWTClaimsSet claims = accessTokenService.buildClaims(user, "client1", "openid");
+                ReflectionTestUtils.setField(accessTokenService, "stateless", true);
+                when(jwtSigningService.verify("token")).thenReturn(claims);
+                when(oidcSessionStore.getUserByToken("token")).thenReturn(user);
+
+                assertSame(user, accessTokenService.resolveUser("token"));
+        }
+}
@@ -0,0 +1,184 @@
+package com.example.oidc.service;
+
+import com.example.oidc.dto.MobileIdCheckResponse;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.IRedisClient;
+import com.example.oidc.storage.KeyspaceTtlPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AuthEventStreamsTest {
+
+        /**
+         * Records the names of the events sent and how the stream ended.
+         */
+        private static class RecordingEmitter extends SseEmitter {
+                private final List<String> events = new ArrayList<>();
+                private boolean completed;
+                private Throwable error;
+
+                @Override
+                public void send(SseEventBuilder builder) throws IOException {
+                        // The first part is the "event:<name>\ndata:" text
+                        String head = builder.build().iterator().next().getData().toString();
+                        events.add(head.substring("event:".length(), head.indexOf('\n')));
+                }
+
+                @Override
+                public void complete() {
+                        completed = true;
+                }
+
+                @Override
+                public void completeWithError(Throwable ex) {
+                        error = ex;
+                }
+        }
+
+        private IOidcSessionStore oidcSessionStore;
+        private AuthEventStreams streams;
+        private AtomicInteger checks;
+        private RecordingEmitter emitter;
+
+        @BeforeEach
+        void setUp() {
+                oidcSessionStore = mock(IOidcSessionStore.class);
+                when(oidcSessionStore.subscribeAuthSession(any(), any()))
+                                .thenReturn(mock(IRedisClient.Subscription.class));
+                emitter = new RecordingEmitter();
+                streams = new AuthEventStreams(oidcSessionStore, new KeyspaceTtlPolicy(),
+                                mock(AuthSessionPoller.class), 30) {
+                        @Override
+                        SseEmitter newEmitter(long timeoutMillis) {
+                                return emitter;
+                        }
+                };
+                checks = new AtomicInteger();
+        }
+
+        private MobileIdCheckResponse check() {
+                checks.incrementAndGet();
+                MobileIdCheckResponse response = new MobileIdCheckResponse();
+                response.sessionId = "session1";
+                return response;
+        }
+
+        @Test
+        void testWithoutWaitAnswersAtOnce() {
+                DeferredResult<MobileIdCheckResponse> result = streams.awaitChange(AuthMethod.MOBILE_ID, "session1", 0,
+                                this::check);
+
+                assertTrue(result.hasResult());
+                verify(oidcSessionStore, never()).subscribeAuthSession(any(), any());
+        }
+
+        @Test
+        void testPendingLoginIsAnsweredOnStateChange() {
+                when(oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, "session1"))
+                                .thenReturn(new AuthSession(AuthMethod.MOBILE_ID));
+
+                DeferredResult<MobileIdCheckResponse> result = streams.awaitChange(AuthMethod.MOBILE_ID, "session1", 10,
+                                this::check);
+                assertFalse(result.hasResult());
+
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<Consumer<AuthSession.State>> listener = ArgumentCaptor.forClass(Consumer.class);
+                verify(oidcSessionStore).subscribeAuthSession(eq("session1"), listener.capture());
+                listener.getValue().accept(AuthSession.State.AUTHENTICATED);
+                listener.getValue().accept(AuthSession.State.FAILED);
+
+                assertTrue(result.hasResult());
+                assertEquals(1, checks.get());
+        }
+
+        @Test
+        void testFinishedLoginIsAnsweredWithoutWaiting() {
+                AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+                session.setState(AuthSession.State.FAILED);
+                when(oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, "session1")).thenReturn(session);
+
+                DeferredResult<MobileIdCheckResponse> result = streams.awaitChange(AuthMethod.MOBILE_ID, "session1", 10,
+                                this::check);
+
+                assertTrue(result.hasResult());
+        }
+
+        @Test
+        void testFailedCheckIsAnsweredWithTheError() {
+                AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+                session.setState(AuthSession.State.AUTHENTICATED);
+                when(oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, "session1")).thenReturn(session);
+                IllegalStateException failure = new IllegalStateException("Redis down");
+
+                DeferredResult<MobileIdCheckResponse> result = streams.awaitChange(AuthMethod.MOBILE_ID, "session1", 10,
+                                () -> {
+                                        throw failure;
+                                });
+
+                assertTrue(result.hasResult());
+                assertSame(failure, result.getResult());
+        }
+
+        @Test
+        void testStreamSendsProgressThenOneFinalCheck() {
+                when(oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, "session1"))
+                                .thenReturn(new AuthSession(AuthMethod.MOBILE_ID));
+
+                streams.open(AuthMethod.MOBILE_ID, "session1", () -> {
+                        MobileIdCheckResponse response = check();
+                        response.redirectUrl = "https://client/cb?code=c1";
+                        return response;
+                });
+
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<Consumer<AuthSession.State>> listener = ArgumentCaptor.forClass(Consumer.class);
+                verify(oidcSessionStore).subscribeAuthSession(eq("session1"), listener.capture());
+                listener.getValue().accept(AuthSession.State.RUNNING);
+                listener.getValue().accept(AuthSession.State.RUNNING);
+                listener.getValue().accept(AuthSession.State.PENDING);
+                listener.getValue().accept(AuthSession.State.AUTHENTICATED);
+                listener.getValue().accept(AuthSession.State.AUTHENTICATED);
+
+                assertEquals(List.of("pending", "running", "complete"), emitter.events);
+                assertEquals(1, checks.get());
+                assertTrue(emitter.completed);
+        }
+
+        @Test
+        void testStreamOfUnknownSessionEndsWithError() {
+                streams.open(AuthMethod.MOBILE_ID, "missing", this::check);
+
+                assertEquals(List.of("error"), emitter.events);
+                assertEquals(0, checks.get());
+                assertTrue(emitter.completed);
+        }
+
+        @Test
+        void testStreamIsClosedWhenTheFinalCheckFails() {
+                AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+                session.setState(AuthSession.State.AUTHENTICATED);
+                when(oidcSessionStore.getAuthSession(AuthMethod.MOBILE_ID, "session1")).thenReturn(session);
+                IllegalStateException failure = new IllegalStateException("Redis down");
+
+                streams.open(AuthMethod.MOBILE_ID, "session1", () -> {
+                        throw failure;
+                });
+
+                assertEquals(List.of("error"), emitter.events);
+                assertSame(failure, emitter.error);
+        }
+}
@@ -0,0 +1,114 @@
+package com.example.oidc.service;
+
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
+import com.example.oidc.storage.IOidcSessionStore;
+import com.example.oidc.storage.KeyspaceTtlPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AuthSessionPollerTest {
+
+        private IOidcSessionStore oidcSessionStore;
+        private AuthSessionPoller poller;
+
+        @BeforeEach
+        void setUp() {
+                oidcSessionStore = mock(IOidcSessionStore.class);
+                when(oidcSessionStore.renewPollLease(any(), anyLong())).thenReturn(true);
+                poller = new AuthSessionPoller(oidcSessionStore, new KeyspaceTtlPolicy(), 10, 3, 30000,
+                                new SimpleMeterRegistry());
+        }
+
+        @AfterEach
+        void tearDown() {
+                poller.shutdown();
+        }
+
+        @Test
+        void testPollsUntilFinalStateIsRecorded() throws Exception {
+                AtomicInteger requests = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(1);
+                poller.start(AuthMethod.MOBILE_ID, "session1", () -> {
+                        if (requests.incrementAndGet() < 3) {
+                                return false;
+                        }
+                        done.countDown();
+                        return true;
+                });
+
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                assertEquals(3, requests.get());
+                verify(oidcSessionStore, times(1)).updateAuthSessionState("session1", AuthSession.State.RUNNING, null);
+                verify(oidcSessionStore, never()).updateAuthSessionState(any(), eq(AuthSession.State.FAILED), any());
+        }
+
+        @Test
+        void testRepeatedErrorsFailTheSession() {
+                AtomicInteger requests = new AtomicInteger();
+                poller.start(AuthMethod.SMART_ID, "session2", () -> {
+                        requests.incrementAndGet();
+                        throw new IllegalStateException("upstream unavailable");
+                });
+
+                verify(oidcSessionStore, timeout(5000)).updateAuthSessionState("session2",
+                                AuthSession.State.FAILED, "upstream unavailable");
+                assertEquals(3, requests.get());
+                verify(oidcSessionStore, never()).updateAuthSessionState(any(), eq(AuthSession.State.RUNNING), any());
+        }
+
+        @Test
+        void testAbandonedLoginIsResumedByAnotherPoller() throws Exception {
+                // The node that started the login went away without finishing it
+                poller.start(AuthMethod.MOBILE_ID, "session3", () -> false);
+                poller.shutdown();
+
+                AuthSessionPoller fresh = new AuthSessionPoller(oidcSessionStore, new KeyspaceTtlPolicy(), 10, 3,
+                                30000, new SimpleMeterRegistry());
+                try {
+                        CountDownLatch release = new CountDownLatch(1);
+                        CountDownLatch done = new CountDownLatch(1);
+                        fresh.registerResumer(AuthMethod.MOBILE_ID, (sessionId, session) -> () -> {
+                                release.await();
+                                done.countDown();
+                                return true;
+                        });
+                        AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+                        session.setState(AuthSession.State.RUNNING);
+
+                        // Still leased by the old node
+                        session.setPolledUntil(System.currentTimeMillis() + 10_000);
+                        assertFalse(fresh.resumeIfAbandoned(AuthMethod.MOBILE_ID, "session3", session));
+
+                        session.setPolledUntil(System.currentTimeMillis() - 1);
+                        assertTrue(fresh.resumeIfAbandoned(AuthMethod.MOBILE_ID, "session3", session));
+                        // Polled once here, not again by a second check
+                        assertFalse(fresh.resumeIfAbandoned(AuthMethod.MOBILE_ID, "session3", session));
+                        release.countDown();
+
+                        assertTrue(done.await(5, TimeUnit.SECONDS));
+                        verify(oidcSessionStore, times(2)).renewPollLease(eq("session3"), anyLong());
+                } finally {
+                        fresh.shutdown();
+                }
+        }
+
+        @Test
+        void testPollingStopsWhenSessionIsGone() {
+                AtomicInteger requests = new AtomicInteger();
+                when(oidcSessionStore.renewPollLease(any(), anyLong())).thenReturn(false);
+
+                assertFalse(poller.start(AuthMethod.SMART_ID, "session4", () -> {
+                        requests.incrementAndGet();
+                        return false;
+                }));
+                assertEquals(0, requests.get());
+        }
+}
@@ -3,7 +3,8 @@ package com.example.oidc.service;
 import com.example.oidc.dto.IdCardChallengeResponse;
 import com.example.oidc.dto.IdCardLoginRequest;
 import com.example.oidc.dto.IdCardLoginResponse;
-import com.example.oidc.dto.IdCardSession;
+import com.example.oidc.storage.AuthMethod;
+import com.example.oidc.storage.AuthSession;
 import com.example.oidc.storage.OidcClient;
 import com.example.oidc.storage.OidcClientRegistry;
 import com.example.oidc.storage.OidcSessionStore;
@@ -18,6 +19,7 @@ import org.junit.jupiter.api.Test;
 import java.security.cert.X509Certificate;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -36,6 +38,10 @@ class IdcardServiceTest {
                 authTokenValidator = mock(AuthTokenValidator.class);
                 clientRegistry = mock(OidcClientRegistry.class);
                 oidcSessionStore = mock(OidcSessionStore.class);
+                when(oidcSessionStore.storeAuthSessionAsync(any(), any()))
+                                .thenReturn(CompletableFuture.completedFuture(null));
+                when(oidcSessionStore.finalizeSessionAsync(any(), any(), any(), any()))
+                                .thenReturn(CompletableFuture.completedFuture(true));
                 idcardService = new IdcardService(
                                 challengeNonceGenerator,
                                 authTokenValidator,
@@ -68,7 +74,7 @@ class IdcardServiceTest {
         void testLoginSessionNotFound() {
                 IdCardLoginRequest body = new IdCardLoginRequest();
                 body.setAuthToken(Map.of("dummy", "value"));
-                when(oidcSessionStore.getIdCardSession("session1")).thenReturn(null);
+                when(oidcSessionStore.getAuthSession(AuthMethod.ID_CARD, "session1")).thenReturn(null);
                 IdCardLoginResponse response = idcardService.login(body, "client1", "http://localhost", "state1",
                                 "nonce1", "session1");
                 assertEquals("Session not found or expired", response.error);
@@ -90,9 +96,9 @@ class IdcardServiceTest {
                 Map<String, Object> tokenMap = mapper.convertValue(mockToken, Map.class);
                 body.setAuthToken(tokenMap);
 
-                IdCardSession mockSession = mock(IdCardSession.class);
-                when(mockSession.getChallengeNonce()).thenReturn("challenge-nonce");
-                when(oidcSessionStore.getIdCardSession("session1")).thenReturn(mockSession);
+                AuthSession session = new AuthSession(AuthMethod.ID_CARD);
+                session.setChallengeNonce("challenge-nonce");
+                when(oidcSessionStore.getAuthSession(AuthMethod.ID_CARD, "session1")).thenReturn(session);
 
                 IdcardService service = new IdcardService(
                                 challengeNonceGenerator,
@@ -0,0 +1,74 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.dto.PkceData;
+import com.example.oidc.storage.codec.JsonObjectCodec;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.storage.codec.SmileObjectCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class InMemoryRedisClientTest {
+
+        private SimpleMeterRegistry meterRegistry;
+        private InMemoryRedisClient client;
+
+        @BeforeEach
+        void setUp() {
+                meterRegistry = new SimpleMeterRegistry();
+                ObjectCodecRegistry codecs = new ObjectCodecRegistry(
+                                List.of(new JsonObjectCodec(), new SmileObjectCodec()), "smile");
+                client = new InMemoryRedisClient(codecs, 10, meterRegistry);
+        }
+
+        @AfterEach
+        void tearDown() {
+                client.shutdown();
+        }
+
+        @Test
+        void testKeysExpireAfterTheirTtl() throws Exception {
+                client.setValue("short", "v1", 50, TimeUnit.MILLISECONDS);
+                client.setValue("long", "v2", 10, TimeUnit.SECONDS);
+                assertEquals("v1", client.getValue("short"));
+                assertEquals(2.0, meterRegistry.get("oidc.storage.memory.keys").gauge().value());
+
+                Thread.sleep(200);
+
+                assertNull(client.getValue("short"));
+                assertEquals("v2", client.getValue("long"));
+                // Removed by the expiry wheel, not only hidden from reads
+                assertEquals(1.0, meterRegistry.get("oidc.storage.memory.keys").gauge().value());
+        }
+
+        @Test
+        void testObjectsAreCopiedAndGetAndDeleteIsSingleUse() {
+                PkceData pkce = new PkceData("challenge", "S256");
+                client.setObject("pkce", pkce);
+                pkce.setCodeChallenge("changed");
+
+                assertEquals("challenge", client.getObject("pkce", PkceData.class).getCodeChallenge());
+                assertNotNull(client.getAndDeleteObject("pkce", PkceData.class));
+                assertNull(client.getAndDeleteObject("pkce", PkceData.class));
+                assertEquals(0.0, meterRegistry.get("oidc.storage.memory.bytes").gauge().value());
+        }
+
+        @Test
+        void testMultiSetRejectsKeysWithoutExpiration() {
+                assertThrows(IllegalArgumentException.class, () -> client.multiSet(
+                                Map.of("k1", "v1", "k2", "v2"), Map.of("k1", 60L), TimeUnit.SECONDS));
+                // Checked before the batch, so nothing was half written
+                assertNull(client.getValue("k1"));
+                assertNull(client.getValue("k2"));
+
+                client.multiSet(Map.of("k1", "v1", "k2", "v2"), Map.of("k1", 60L, "k2", 60L), TimeUnit.SECONDS);
+                assertEquals("v1", client.getValue("k1"));
+                assertEquals("v2", client.getValue("k2"));
+        }
+}
@@ -0,0 +1,81 @@
+package com.example.oidc.storage;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+class KeyspaceAnalyzerTest {
+
+        @Test
+        void testAccumulatorComputesSizesAndTtlBuckets() {
+                KeyspaceAnalyzer.Accumulator accumulator = new KeyspaceAnalyzer.Accumulator(200);
+                for (int i = 1; i <= 100; i++) {
+                        int slot = accumulator.offer();
+                        // 1..100 bytes; half without expiry, half expiring in 2 minutes
+                        accumulator.record(slot, (long) i, i % 2 == 0 ? -1L : 120_000L);
+                }
+                // Expired between SCAN and MEMORY USAGE: counted, not measured
+                accumulator.record(accumulator.offer(), null, -2L);
+
+                KeyspaceAnalyzer.PrefixStats stats = accumulator.stats();
+                assertEquals(101, stats.keys());
+                assertEquals(100, stats.sampled());
+                assertEquals(50, stats.avgBytes());
+                assertEquals(99, stats.p99Bytes());
+                assertEquals(100, stats.maxBytes());
+                assertEquals(50L, stats.ttl().get("none"));
+                assertEquals(50L, stats.ttl().get("1m-5m"));
+        }
+
+        @Test
+        void testAccumulatorSampleIsBounded() {
+                KeyspaceAnalyzer.Accumulator accumulator = new KeyspaceAnalyzer.Accumulator(10);
+                for (int i = 0; i < 1000; i++) {
+                        int slot = accumulator.offer();
+                        assertTrue(slot < 10);
+                        if (slot >= 0) {
+                                accumulator.record(slot, 64L, 30_000L);
+                        }
+                }
+
+                KeyspaceAnalyzer.PrefixStats stats = accumulator.stats();
+                assertEquals(1000, stats.keys());
+                assertEquals(10, stats.sampled());
+                assertEquals(10L, stats.ttl().get("<1m"));
+        }
+
+        @Test
+        void testVanishedKeyKeepsEarlierSample() {
+                KeyspaceAnalyzer.Accumulator accumulator = new KeyspaceAnalyzer.Accumulator(10);
+                for (int i = 0; i < 10; i++) {
+                        accumulator.record(accumulator.offer(), 64L, 30_000L);
+                }
+                // Later keys picked for a slot are gone before they are measured
+                for (int i = 0; i < 1000; i++) {
+                        int slot = accumulator.offer();
+                        if (slot >= 0) {
+                                accumulator.record(slot, null, -2L);
+                        }
+                }
+
+                KeyspaceAnalyzer.PrefixStats stats = accumulator.stats();
+                assertEquals(1010, stats.keys());
+                assertEquals(10, stats.sampled());
+                assertEquals(64, stats.avgBytes());
+        }
+
+        @Test
+        void testKeysAreGroupedByStorePrefix() {
+                KeyspaceAnalyzer analyzer = new KeyspaceAnalyzer(mock(LettuceConnectionFactory.class), 200, 2000,
+                                1_000_000, 1000, 300);
+                try {
+                        assertEquals("auth:session:", analyzer.prefixOf("auth:session:abc"));
+                        assertEquals("oidc:code:", analyzer.prefixOf("oidc:code:xyz"));
+                        assertEquals(KeyspaceAnalyzer.OTHER, analyzer.prefixOf("unrelated"));
+                } finally {
+                        analyzer.shutdown();
+                }
+        }
+}
@@ -0,0 +1,31 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.storage.codec.JsonObjectCodec;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LettuceAsyncRedisClientTest {
+
+        @Test
+        void testWritesDropTheTrackedCopy() {
+                ClientTrackingCache trackingCache = mock(ClientTrackingCache.class);
+                LettuceConnectionFactory connectionFactory = mock(LettuceConnectionFactory.class);
+                // Redis is down; the local copy must be dropped before anything is sent
+                when(connectionFactory.getRequiredNativeClient()).thenThrow(new IllegalStateException("down"));
+                LettuceAsyncRedisClient client = new LettuceAsyncRedisClient(connectionFactory,
+                                new ObjectCodecRegistry(List.of(new JsonObjectCodec()), "json"), trackingCache);
+
+                assertTrue(client.getAndDeleteHash("auth:session:s1").toCompletableFuture().isCompletedExceptionally());
+                client.executeBatch(batch -> batch.setHash("auth:session:s2", Map.of("state", "PENDING"), 60,
+                                TimeUnit.SECONDS));
+
+                verify(trackingCache).evict("auth:session:s1");
+                verify(trackingCache).evict("auth:session:s2");
+        }
+}
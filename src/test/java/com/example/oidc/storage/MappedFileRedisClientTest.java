@@ -0,0 +1,102 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.storage.codec.JsonObjectCodec;
+import com.example.oidc.storage.codec.ObjectCodecRegistry;
+import com.example.oidc.storage.codec.SmileObjectCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class MappedFileRedisClientTest {
+
+        @TempDir
+        Path tempDir;
+
+        private MappedFileRedisClient client;
+
+        @AfterEach
+        void tearDown() {
+                if (client != null) {
+                        client.shutdown();
+                }
+        }
+
+        private MappedFileRedisClient open() {
+                ObjectCodecRegistry codecs = new ObjectCodecRegistry(
+                                List.of(new JsonObjectCodec(), new SmileObjectCodec()), "smile");
+                client = new MappedFileRedisClient(codecs, tempDir.resolve("store.log").toString(), 1, 60_000,
+                                new SimpleMeterRegistry());
+                return client;
+        }
+
+        @Test
+        void testDataSurvivesRestart() {
+                open();
+                client.setHash("auth:session:s1", Map.of("method", "MOBILE_ID", "personal_code", "60001019906"), 1,
+                                TimeUnit.HOURS);
+                client.updateHash("auth:session:s1", Map.of("state", "FAILED"));
+                client.setValue("oidc:token:t1", "user", 1, TimeUnit.HOURS);
+                client.setValue("oidc:code:c1", "code");
+                client.delete("oidc:code:c1");
+                client.setValue("expired", "x", 1, TimeUnit.MILLISECONDS);
+                client.shutdown();
+
+                open();
+                assertEquals(Map.of("method", "MOBILE_ID", "personal_code", "60001019906", "state", "FAILED"),
+                                client.getHash("auth:session:s1"));
+                assertEquals("user", client.getValue("oidc:token:t1"));
+                assertNull(client.getValue("oidc:code:c1"));
+                assertNull(client.getValue("expired"));
+        }
+
+        @Test
+        void testTornRecordIsDiscardedOnRecovery() throws Exception {
+                open();
+                client.setValue("a", "1", 1, TimeUnit.HOURS);
+                client.setValue("b", "2", 1, TimeUnit.HOURS);
+                client.shutdown();
+
+                // Corrupt the value of the last record, as if the process died mid-write
+                Path file = tempDir.resolve("store.log");
+                int lastRecordValue = (21 + 1 + 1) * 2 - 1;
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                        raf.seek(lastRecordValue);
+                        raf.write('X');
+                }
+
+                open();
+                assertEquals("1", client.getValue("a"));
+                assertNull(client.getValue("b"));
+                client.setValue("c", "3", 1, TimeUnit.HOURS);
+                client.shutdown();
+
+                open();
+                assertEquals("3", client.getValue("c"));
+        }
+
+        @Test
+        void testCompactionKeepsLiveKeysOnly() throws Exception {
+                open();
+                for (int i = 0; i < 1000; i++) {
+                        client.setValue("key", "value-" + i, 1, TimeUnit.HOURS);
+                }
+                client.setValue("gone", "x", 1, TimeUnit.HOURS);
+                client.delete("gone");
+                client.compact(0);
+                client.setValue("after", "y", 1, TimeUnit.HOURS);
+                client.shutdown();
+
+                open();
+                assertEquals("value-999", client.getValue("key"));
+                assertEquals("y", client.getValue("after"));
+                assertNull(client.getValue("gone"));
+        }
+}
@@ -0,0 +1,104 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.service.IJwtSigningService;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+class OidcClientRegistryTest {
+
+        @TempDir
+        Path tempDir;
+
+        private Path configFile;
+        private SimpleMeterRegistry meterRegistry;
+        private IJwtSigningService jwtSigningService;
+        private OidcClientRegistry registry;
+
+        @BeforeEach
+        void setUp() throws Exception {
+                configFile = tempDir.resolve("oidc-clients.json");
+                writeConfig(client("client-a", "https://a.example.com/cb"), 1_000_000L);
+                meterRegistry = new SimpleMeterRegistry();
+                jwtSigningService = mock(IJwtSigningService.class);
+                when(jwtSigningService.resolveAlgorithm(any())).thenReturn(JWSAlgorithm.RS256);
+                when(jwtSigningService.resolveAlgorithm("ES512")).thenThrow(new JOSEException("No active key"));
+                // Polling disabled; reloads are triggered by the test
+                registry = new OidcClientRegistry(configFile.toString(), 0, meterRegistry, jwtSigningService);
+        }
+
+        @AfterEach
+        void tearDown() {
+                registry.shutdown();
+        }
+
+        @Test
+        void testReloadPublishesChangedFile() throws Exception {
+                assertFalse(registry.reloadIfChanged());
+
+                writeConfig(client("client-a", "https://a.example.com/cb") + ","
+                                + client("client-b", "https://b.example.com/cb"), 2_000_000L);
+
+                assertTrue(registry.reloadIfChanged());
+                assertNotNull(registry.getClient("client-b"));
+                assertEquals("client-b", registry.getClientByReturnUri("https://b.example.com/cb").getClientId());
+                assertEquals(1.0, reloads("success"));
+                assertEquals(2.0, meterRegistry.get("oidc.clients.count").gauge().value());
+        }
+
+        @Test
+        void testInvalidFileKeepsPreviousClients() throws Exception {
+                Files.writeString(configFile, "{\"clients\": [");
+                Files.setLastModifiedTime(configFile, FileTime.fromMillis(2_000_000L));
+
+                assertFalse(registry.reloadIfChanged());
+                assertNotNull(registry.isValidClient("client-a", "https://a.example.com/cb"));
+                assertEquals(1.0, reloads("failure"));
+
+                // The same broken file is not retried on every poll
+                assertFalse(registry.reloadIfChanged());
+                assertEquals(1.0, reloads("failure"));
+        }
+
+        @Test
+        void testUnsupportedSigningAlgorithmIsRejected() throws Exception {
+                String badClient = "{\"clientId\":\"client-b\",\"clientSecret\":\"secret\",\"scope\":\"openid\","
+                                + "\"redirectUri\":[\"https://b.example.com/cb\"],\"signingAlgorithm\":\"ES512\"}";
+                writeConfig(client("client-a", "https://a.example.com/cb") + "," + badClient, 2_000_000L);
+
+                // A hot reload keeps the previous clients
+                assertFalse(registry.reloadIfChanged());
+                assertNull(registry.getClient("client-b"));
+                assertNotNull(registry.getClient("client-a"));
+                assertEquals(1.0, reloads("failure"));
+
+                // Startup fails
+                assertThrows(RuntimeException.class, () -> new OidcClientRegistry(configFile.toString(), 0,
+                                new SimpleMeterRegistry(), jwtSigningService));
+        }
+
+        private double reloads(String result) {
+                return meterRegistry.get("oidc.clients.reloads").tag("result", result).counter().count();
+        }
+
+        private static String client(String clientId, String redirectUri) {
+                return "{\"clientId\":\"" + clientId + "\",\"clientSecret\":\"secret\",\"scope\":\"openid\","
+                                + "\"redirectUri\":[\"" + redirectUri + "\"]}";
+        }
+
+        private void writeConfig(String clients, long lastModified) throws Exception {
+                Files.writeString(configFile, "{\"clients\":[" + clients + "]}");
+                Files.setLastModifiedTime(configFile, FileTime.fromMillis(lastModified));
+        }
+}
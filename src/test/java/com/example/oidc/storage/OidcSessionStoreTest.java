@@ -0,0 +1,219 @@
+package com.example.oidc.storage;
+
+import com.example.oidc.dto.PkceData;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class OidcSessionStoreTest {
+
+        private IRedisClient redisClient;
+        private OidcSessionStore store;
+
+        @BeforeEach
+        void setUp() {
+                redisClient = mock(IRedisClient.class);
+                // Batches run against the mock one operation at a time
+                doCallRealMethod().when(redisClient).executeBatch(any());
+                store = new OidcSessionStore(redisClient);
+        }
+
+        @Test
+        void testStoreCodeWritesSingleRecord() {
+                UserInfo user = new UserInfo("40404040009", "John", "Smith", "EE", null, null, "nonce1");
+                store.storeCode("code1", user, new PkceData("challenge", "S256"));
+
+                ArgumentCaptor<AuthorizationCode> captor = ArgumentCaptor.forClass(AuthorizationCode.class);
+                verify(redisClient, times(1)).executeBatch(any());
+                verify(redisClient, times(1)).setObject(eq("oidc:code:code1"), captor.capture(), anyLong(), any());
+                verifyNoMoreInteractions(redisClient);
+                assertSame(user, captor.getValue().getUser());
+                assertEquals("challenge", captor.getValue().getPkceData().getCodeChallenge());
+        }
+
+        @Test
+        void testStoreCodeStoresCertificateOnceByFingerprint() {
+                String cert = "MIIBszCCAVmgAwIBAgIUQ2VydA==";
+                UserInfo user = new UserInfo("40404040009", "John", "Smith", "EE", null, null, null);
+                user.setCert(cert);
+                store.storeCode("code1", user, null);
+                store.storeCode("code2", user, null);
+
+                String fingerprint = OidcSessionStore.certFingerprint(cert);
+                verify(redisClient, times(2)).setValue(eq("oidc:cert:" + fingerprint), eq(cert), anyLong(), any());
+                ArgumentCaptor<AuthorizationCode> captor = ArgumentCaptor.forClass(AuthorizationCode.class);
+                verify(redisClient).setObject(eq("oidc:code:code1"), captor.capture(), anyLong(), any());
+                assertNull(captor.getValue().getUser().getCert());
+                assertEquals(fingerprint, captor.getValue().getUser().getCertFingerprint());
+                assertEquals(cert, user.getCert());
+
+                // Served from the local cache without touching Redis
+                assertEquals(cert, store.getCertificate(fingerprint));
+                verify(redisClient, never()).getAndExpire(anyString(), anyLong(), any());
+        }
+
+        @Test
+        void testAuthSessionIsStoredAsHash() {
+                AuthSession session = new AuthSession(AuthMethod.MOBILE_ID);
+                session.setPersonalCode("60001019906");
+                session.setPkceData(new PkceData("challenge", "S256"));
+                store.storeAuthSession("session1", session);
+
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<Map<String, String>> fields = ArgumentCaptor.forClass(Map.class);
+                verify(redisClient).setHash(eq("auth:session:session1"), fields.capture(), eq(300L),
+                                eq(TimeUnit.SECONDS));
+                // Unset properties take no space
+                assertEquals(Map.of("method", "MOBILE_ID", "state", "PENDING", "personal_code", "60001019906",
+                                "code_challenge", "challenge", "code_challenge_method", "S256"), fields.getValue());
+
+                when(redisClient.getHash("auth:session:session1")).thenReturn(fields.getValue());
+                AuthSession read = store.getAuthSession(AuthMethod.MOBILE_ID, "session1");
+                assertEquals("60001019906", read.getPersonalCode());
+                assertEquals("S256", read.getPkceData().getCodeChallengeMethod());
+                assertNull(store.getAuthSession(AuthMethod.SMART_ID, "session1"));
+        }
+
+        @Test
+        void testAuthenticatedUserIsStoredAndPublished() {
+                UserInfo user = new UserInfo("40404040009", "John", "Smith", "EE", LocalDate.of(1904, 4, 4), null,
+                                "nonce1");
+                when(redisClient.updateHash(eq("auth:session:session1"), any())).thenReturn(true);
+
+                assertTrue(store.storeAuthenticatedUser("session1", user));
+
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<Map<String, String>> fields = ArgumentCaptor.forClass(Map.class);
+                verify(redisClient).updateHash(eq("auth:session:session1"), fields.capture());
+                verify(redisClient).publish("auth:events:session1", "AUTHENTICATED");
+                // The nonce belongs to the request that issues the code
+                assertFalse(fields.getValue().containsValue("nonce1"));
+
+                Map<String, String> stored = new HashMap<>(fields.getValue());
+                stored.put("method", "MOBILE_ID");
+                when(redisClient.getHash("auth:session:session1")).thenReturn(stored);
+                AuthSession read = store.getAuthSession(AuthMethod.MOBILE_ID, "session1");
+                assertEquals(AuthSession.State.AUTHENTICATED, read.getState());
+                assertEquals("Smith", read.getUser().getSurname());
+                assertEquals(LocalDate.of(1904, 4, 4), read.getUser().getDateOfBirth());
+        }
+
+        @Test
+        void testFinalizeSessionIssuesCodeOnce() {
+                String cert = "MIIBszCCAVmgAwIBAgIUQ2VydA==";
+                UserInfo user = new UserInfo("40404040009", "John", "Smith", "EE", null, null, null);
+                user.setCert(cert);
+                when(redisClient.getAndDeleteHash("auth:session:session1"))
+                                .thenReturn(Map.of("method", "SMART_ID", "code_challenge", "challenge"))
+                                .thenReturn(null);
+
+                assertTrue(store.finalizeSession(AuthMethod.SMART_ID, "session1", "code1", user));
+                assertFalse(store.finalizeSession(AuthMethod.SMART_ID, "session1", "code2", user));
+
+                ArgumentCaptor<AuthorizationCode> captor = ArgumentCaptor.forClass(AuthorizationCode.class);
+                verify(redisClient, times(1)).executeBatch(any());
+                verify(redisClient).setValue(eq("oidc:cert:" + OidcSessionStore.certFingerprint(cert)), eq(cert),
+                                anyLong(), any());
+                verify(redisClient).setObject(eq("oidc:code:code1"), captor.capture(), anyLong(), any());
+                verify(redisClient, never()).setObject(eq("oidc:code:code2"), any(), anyLong(), any());
+                assertEquals("challenge", captor.getValue().getPkceData().getCodeChallenge());
+        }
+
+        @Test
+        void testFinalizeSessionRestoresSessionWhenCodeWriteFails() {
+                Map<String, String> fields = Map.of("method", "MOBILE_ID", "state", "AUTHENTICATED");
+                when(redisClient.getAndDeleteHash("auth:session:session1")).thenReturn(fields);
+                doThrow(new RuntimeException("Redis down")).when(redisClient)
+                                .setObject(eq("oidc:code:code1"), any(), anyLong(), any());
+
+                assertFalse(store.finalizeSession(AuthMethod.MOBILE_ID, "session1", "code1", new UserInfo()));
+                assertFalse(store.finalizeSessionAsync(AuthMethod.MOBILE_ID, "session1", "code1", new UserInfo())
+                                .toCompletableFuture().join());
+
+                verify(redisClient, times(2)).setHash("auth:session:session1", fields, 300L, TimeUnit.SECONDS);
+        }
+
+        @Test
+        void testFinalizeSessionAsyncLogsFailures() {
+                doThrow(new RuntimeException("Redis down")).when(redisClient).getAndDeleteHash(anyString());
+
+                assertFalse(store.finalizeSessionAsync(AuthMethod.MOBILE_ID, "session1", "code1", new UserInfo())
+                                .toCompletableFuture().join());
+
+                verify(redisClient).getAndDeleteHash("auth:session:session1");
+                verify(redisClient, never()).executeBatch(any());
+        }
+
+        @Test
+        void testConsumeCodeIsSingleUse() {
+                AuthorizationCode stored = new AuthorizationCode(new UserInfo(), null);
+                when(redisClient.getAndDeleteObject("oidc:code:code1", AuthorizationCode.class))
+                                .thenReturn(stored)
+                                .thenReturn(null);
+
+                assertSame(stored, store.consumeCode("code1"));
+                assertNull(store.consumeCode("code1"));
+                verify(redisClient, never()).getObject(anyString(), any());
+        }
+
+        @Test
+        void testStoreTokenKeysByHash() {
+                String token = "eyJhbGciOiJSUzI1NiJ9." + "x".repeat(600) + ".sig";
+                store.storeToken(token, new UserInfo());
+
+                ArgumentCaptor<String> key = ArgumentCaptor.forClass(String.class);
+                verify(redisClient).setObject(key.capture(), any(UserInfo.class), anyLong(), any());
+                assertEquals("oidc:token:".length() + 43, key.getValue().length());
+                assertFalse(key.getValue().contains(token));
+        }
+
+        @Test
+        void testStoredTokenLivesUntilItsExpiry() {
+                String token = new PlainJWT(new JWTClaimsSet.Builder()
+                                .subject("40404040009")
+                                .expirationTime(new Date(System.currentTimeMillis() + 3600 * 1000))
+                                .build()).serialize();
+                store.storeToken(token, new UserInfo());
+
+                ArgumentCaptor<Long> ttl = ArgumentCaptor.forClass(Long.class);
+                verify(redisClient).setObject(eq(OidcSessionStore.tokenKey(token)), any(UserInfo.class),
+                                ttl.capture(), eq(TimeUnit.SECONDS));
+                assertTrue(ttl.getValue() > 3590 && ttl.getValue() <= 3600, "ttl " + ttl.getValue());
+        }
+
+        @Test
+        void testGetUserByTokenIsServedFromNearCache() {
+                String token = new PlainJWT(new JWTClaimsSet.Builder()
+                                .subject("40404040009")
+                                .expirationTime(new Date(System.currentTimeMillis() + 3600 * 1000))
+                                .build()).serialize();
+                when(redisClient.getObjectFromReplica(OidcSessionStore.tokenKey(token), UserInfo.class))
+                                .thenReturn(new UserInfo("40404040009", "John", null, null, null, null, null));
+
+                UserInfo first = store.getUserByToken(token);
+                UserInfo second = store.getUserByToken(token);
+
+                assertEquals("John", first.getGivenName());
+                assertSame(first, second);
+                verify(redisClient, times(1)).getObjectFromReplica(anyString(), eq(UserInfo.class));
+
+                store.removeToken(token);
+                when(redisClient.getObjectFromReplica(OidcSessionStore.tokenKey(token), UserInfo.class))
+                                .thenReturn(null);
+                assertNull(store.getUserByToken(token));
+        }
+}
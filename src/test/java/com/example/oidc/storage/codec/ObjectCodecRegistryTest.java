@@ -0,0 +1,44 @@
+package com.example.oidc.storage.codec;
+
+import com.example.oidc.storage.UserInfo;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+class ObjectCodecRegistryTest {
+
+        private final List<IObjectCodec> codecs = List.of(new JsonObjectCodec(), new SmileObjectCodec());
+
+        @Test
+        void testValuesWrittenWithEitherCodecAreReadable() throws Exception {
+                ObjectCodecRegistry json = new ObjectCodecRegistry(codecs, "json");
+                ObjectCodecRegistry smile = new ObjectCodecRegistry(codecs, "smile");
+                UserInfo user = new UserInfo("40404040009", "John", "Smith", "EE", LocalDate.of(1980, 1, 8),
+                                "+37200000766", null);
+
+                byte[] jsonBytes = json.encode(user);
+                byte[] smileBytes = smile.encode(user);
+                assertEquals(JsonObjectCodec.FORMAT_ID, jsonBytes[0]);
+                assertEquals(SmileObjectCodec.FORMAT_ID, smileBytes[0]);
+
+                // A node switched to Smile still reads JSON values, and vice versa
+                assertEquals(LocalDate.of(1980, 1, 8), smile.decode(jsonBytes, UserInfo.class).getDateOfBirth());
+                assertEquals("Smith", json.decode(smileBytes, UserInfo.class).getSurname());
+        }
+
+        @Test
+        void testLegacyJsonWithoutFormatIdIsReadable() throws Exception {
+                ObjectCodecRegistry smile = new ObjectCodecRegistry(codecs, "smile");
+                byte[] legacy = "{\"sub\":\"40404040009\",\"givenName\":\"John\"}".getBytes(StandardCharsets.UTF_8);
+
+                assertEquals("John", smile.decode(legacy, UserInfo.class).getGivenName());
+        }
+
+        @Test
+        void testUnknownCodecIsRejected() {
+                assertThrows(IllegalStateException.class, () -> new ObjectCodecRegistry(codecs, "cbor"));
+        }
+}
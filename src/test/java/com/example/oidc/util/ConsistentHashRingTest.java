@@ -0,0 +1,80 @@
+package com.example.oidc.util;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+class ConsistentHashRingTest {
+
+        private static final int KEYS = 200_000;
+
+        @Test
+        void testKeysAreSpreadEvenlyOverShards() {
+                List<String> shards = List.of("redis-1:6379", "redis-2:6379", "redis-3:6379", "redis-4:6379");
+                ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards, shards, 160);
+
+                int[] counts = new int[shards.size()];
+                for (String key : keys()) {
+                        counts[ring.indexFor(key)]++;
+                }
+
+                double mean = (double) KEYS / shards.size();
+                for (int count : counts) {
+                        // Within 15% of an even share
+                        assertTrue(Math.abs(count - mean) / mean < 0.15, "skewed distribution: " + counts[0] + ", "
+                                        + counts[1] + ", " + counts[2] + ", " + counts[3]);
+                }
+        }
+
+        @Test
+        void testAddingAShardMovesOnlyItsShare() {
+                List<String> four = List.of("redis-1:6379", "redis-2:6379", "redis-3:6379", "redis-4:6379");
+                List<String> five = new ArrayList<>(four);
+                five.add("redis-5:6379");
+                ConsistentHashRing<String> before = new ConsistentHashRing<>(four, four, 160);
+                ConsistentHashRing<String> after = new ConsistentHashRing<>(five, five, 160);
+
+                int moved = 0;
+                for (String key : keys()) {
+                        String target = after.nodeFor(key);
+                        if (!target.equals(before.nodeFor(key))) {
+                                // Keys only ever move to the new shard
+                                assertEquals("redis-5:6379", target);
+                                moved++;
+                        }
+                }
+                double share = (double) moved / KEYS;
+                assertTrue(share > 0.15 && share < 0.25, "moved share " + share);
+        }
+
+        @Test
+        void testPlacementDoesNotDependOnNodeOrder() {
+                List<String> shards = List.of("a:6379", "b:6379", "c:6379");
+                List<String> reversed = List.of("c:6379", "b:6379", "a:6379");
+                ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards, shards, 160);
+                ConsistentHashRing<String> other = new ConsistentHashRing<>(reversed, reversed, 160);
+
+                for (String key : keys().subList(0, 10_000)) {
+                        assertEquals(ring.nodeFor(key), other.nodeFor(key));
+                }
+        }
+
+        // Mix of the sharded keyspaces with random ids like the real ones
+        private static List<String> keys() {
+                String[] prefixes = { "oidc:code:", "oidc:token:", "mobileid:session:", "smartid:session:",
+                                "idcard-session:" };
+                Random random = new Random(7);
+                byte[] id = new byte[32];
+                List<String> keys = new ArrayList<>(KEYS);
+                for (int i = 0; i < KEYS; i++) {
+                        random.nextBytes(id);
+                        keys.add(prefixes[i % prefixes.length]
+                                        + Base64.getUrlEncoder().withoutPadding().encodeToString(id));
+                }
+                return keys;
+        }
+}
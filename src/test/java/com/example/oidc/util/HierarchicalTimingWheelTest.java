@@ -0,0 +1,62 @@
+package com.example.oidc.util;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class HierarchicalTimingWheelTest {
+
+        private static final long TICK = 10;
+
+        @Test
+        void testItemsFireOnTheTickOfTheirDeadline() {
+                HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, 0);
+                List<String> fired = new ArrayList<>();
+                // One deadline per level: level 0, level 1 (64 ticks), level 2 (4096 ticks), level 3
+                wheel.schedule("a", 50);
+                wheel.schedule("b", 7_000);
+                wheel.schedule("c", 500_000);
+                wheel.schedule("d", 30_000_000);
+
+                wheel.advance(40, fired::add);
+                assertTrue(fired.isEmpty());
+                wheel.advance(50, fired::add);
+                assertEquals(List.of("a"), fired);
+
+                wheel.advance(6_990, fired::add);
+                assertEquals(List.of("a"), fired);
+                wheel.advance(7_000, fired::add);
+                assertEquals(List.of("a", "b"), fired);
+
+                wheel.advance(499_990, fired::add);
+                assertEquals(2, fired.size());
+                wheel.advance(500_000, fired::add);
+                assertEquals(List.of("a", "b", "c"), fired);
+
+                wheel.advance(29_999_990, fired::add);
+                assertEquals(3, fired.size());
+                wheel.advance(30_000_000, fired::add);
+                assertEquals(List.of("a", "b", "c", "d"), fired);
+                assertEquals(0, wheel.size());
+        }
+
+        @Test
+        void testDeadlinesBeyondTheWheelRangeAndInThePast() {
+                HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, 0);
+                List<String> fired = new ArrayList<>();
+                long beyondRange = TICK * (1L << 24) * 2 + 5;
+                wheel.advance(1_000, fired::add);
+                wheel.schedule("overflow", beyondRange);
+                wheel.schedule("past", 0);
+
+                wheel.advance(1_010, fired::add);
+                assertEquals(List.of("past"), fired);
+
+                wheel.advance(beyondRange - 1, fired::add);
+                assertEquals(List.of("past"), fired);
+                wheel.advance(beyondRange + TICK, fired::add);
+                assertEquals(List.of("past", "overflow"), fired);
+        }
+}
@@ -0,0 +1,69 @@
+package com.example.oidc.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+        @Test
+        void testConcurrentCallersShareOneExecution() throws Exception {
+                SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+                SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+                AtomicInteger executions = new AtomicInteger();
+                CountDownLatch release = new CountDownLatch(1);
+                int callers = 8;
+
+                ExecutorService executor = Executors.newFixedThreadPool(callers);
+                try {
+                        List<Future<String>> results = new ArrayList<>();
+                        for (int i = 0; i < callers; i++) {
+                                results.add(executor.submit(() -> singleFlight.execute("session1", () -> {
+                                        executions.incrementAndGet();
+                                        try {
+                                                release.await();
+                                        } catch (InterruptedException e) {
+                                                Thread.currentThread().interrupt();
+                                        }
+                                        return "code-" + executions.get();
+                                })));
+                        }
+                        // Let every caller reach the in-flight call before it finishes
+                        while (meterRegistry.get("oidc.singleflight.calls").tag("result", "joined").counter()
+                                        .count() < callers - 1) {
+                                Thread.sleep(5);
+                        }
+                        release.countDown();
+
+                        for (Future<String> result : results) {
+                                assertEquals("code-1", result.get(5, TimeUnit.SECONDS));
+                        }
+                } finally {
+                        executor.shutdownNow();
+                }
+                assertEquals(1, executions.get());
+                assertEquals(1.0, meterRegistry.get("oidc.singleflight.calls").tag("result", "executed").counter()
+                                .count());
+
+                // Nothing is cached once the call has finished
+                assertEquals("again", singleFlight.execute("session1", () -> "again"));
+        }
+
+        @Test
+        void testFailureIsSharedAndNotRemembered() {
+                SingleFlight<String, String> singleFlight = new SingleFlight<>("test", new SimpleMeterRegistry());
+
+                assertThrows(IllegalStateException.class, () -> singleFlight.execute("session1", () -> {
+                        throw new IllegalStateException("Redis down");
+                }));
+                assertEquals("ok", singleFlight.execute("session1", () -> "ok"));
+        }
+}